@@ -0,0 +1,47 @@
+package com.chatify.chat_backend.benchmarks;
+
+import com.chatify.chat_backend.security.JwtUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token issuance and validation, with and without the verified-token cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtBenchmark {
+
+    private JwtUtil cachedJwtUtil;
+    private JwtUtil uncachedJwtUtil;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        cachedJwtUtil = BenchmarkFixtures.jwtUtil(10_000);
+        // Cache disabled: every call is a full parse + signature check
+        uncachedJwtUtil = BenchmarkFixtures.jwtUtil(0);
+
+        token = cachedJwtUtil.generateToken(BenchmarkFixtures.user(1L, BenchmarkFixtures.SENDER));
+        cachedJwtUtil.isTokenValid(token, BenchmarkFixtures.SENDER);
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return cachedJwtUtil.generateToken(BenchmarkFixtures.user(1L, BenchmarkFixtures.SENDER));
+    }
+
+    @Benchmark
+    public boolean isTokenValidCached() {
+        return cachedJwtUtil.isTokenValid(token, BenchmarkFixtures.SENDER);
+    }
+
+    @Benchmark
+    public Object validateUncached() {
+        return uncachedJwtUtil.validateAndGetClaims(token);
+    }
+}
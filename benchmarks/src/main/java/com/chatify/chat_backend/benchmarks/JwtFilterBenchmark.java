@@ -0,0 +1,52 @@
+package com.chatify.chat_backend.benchmarks;
+
+import com.chatify.chat_backend.security.CustomUserDetailsService;
+import com.chatify.chat_backend.security.JwtAuthenticationFilter;
+import com.chatify.chat_backend.security.JwtUtil;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One authenticated REST request through JwtAuthenticationFilter in stateless
+ * principal mode, so no database is involved.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtFilterBenchmark {
+
+    private JwtAuthenticationFilter filter;
+    private String authorizationHeader;
+
+    @Setup
+    public void setUp() {
+        JwtUtil jwtUtil = BenchmarkFixtures.jwtUtil(10_000);
+        // The user details service is only used for tokens without roles, never here
+        filter = new JwtAuthenticationFilter(
+                jwtUtil, new CustomUserDetailsService(null), BenchmarkFixtures.revocationRegistry());
+        ReflectionTestUtils.setField(filter, "statelessPrincipal", true);
+
+        authorizationHeader = "Bearer " + jwtUtil.generateToken(BenchmarkFixtures.user(1L, BenchmarkFixtures.SENDER));
+    }
+
+    @Benchmark
+    public Object doFilter() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/messages/history");
+        request.addHeader("Authorization", authorizationHeader);
+        try {
+            filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+            return SecurityContextHolder.getContext().getAuthentication();
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.chatify.chat_backend.benchmarks;
+
+import com.chatify.chat_backend.dto.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * (De)serialization of dto.Message as JSON (SockJS and default STOMP) and CBOR (/ws-native).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageJsonBenchmark {
+
+    private ObjectMapper jsonMapper;
+    private CBORMapper cborMapper;
+    private Message message;
+    private byte[] json;
+    private byte[] cbor;
+
+    @Setup
+    public void setUp() throws Exception {
+        jsonMapper = new ObjectMapper().findAndRegisterModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        cborMapper = new CBORMapper();
+        cborMapper.findAndRegisterModules();
+
+        message = new Message();
+        message.setSenderEmail(BenchmarkFixtures.SENDER);
+        message.setRecipientEmail(BenchmarkFixtures.RECIPIENT);
+        message.setContent("Hey, are we still on for the release review at 3pm?");
+        message.setTimestamp(LocalDateTime.now());
+
+        json = jsonMapper.writeValueAsBytes(message);
+        cbor = cborMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public byte[] serializeJson() throws Exception {
+        return jsonMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public Message deserializeJson() throws Exception {
+        return jsonMapper.readValue(json, Message.class);
+    }
+
+    @Benchmark
+    public byte[] serializeCbor() throws Exception {
+        return cborMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public Message deserializeCbor() throws Exception {
+        return cborMapper.readValue(cbor, Message.class);
+    }
+}
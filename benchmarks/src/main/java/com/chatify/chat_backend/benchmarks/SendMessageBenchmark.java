@@ -0,0 +1,137 @@
+package com.chatify.chat_backend.benchmarks;
+
+import com.chatify.chat_backend.cluster.ClusterMessageRouter;
+import com.chatify.chat_backend.cluster.InProcessCluster;
+import com.chatify.chat_backend.controller.ChatController;
+import com.chatify.chat_backend.dto.Message;
+import com.chatify.chat_backend.service.MessagePersistenceService;
+import com.chatify.chat_backend.service.OutboundMessageCoalescer;
+import com.chatify.chat_backend.service.UserService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.messaging.DefaultSimpUserRegistry;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+
+import java.security.Principal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ChatController.sendMessage through the router, JSON conversion and the simple
+ * in-memory broker, up to the clientOutbound channel. Recipient lookup and
+ * persistence are stubbed out, they have their own caches/queues.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SendMessageBenchmark {
+
+    private static final String SESSION_ID = "benchmark-session";
+
+    private ChatController chatController;
+    private ClusterMessageRouter router;
+    private SimpleBrokerMessageHandler broker;
+    private final AtomicLong framesToClients = new AtomicLong();
+    private final Principal sender = () -> BenchmarkFixtures.SENDER;
+    private Message message;
+
+    @Setup
+    public void setUp() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        // Synchronous channels: no executors, the benchmark thread does all the work
+        ExecutorSubscribableChannel clientInbound = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel clientOutbound = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+        clientOutbound.subscribe(frame -> framesToClients.incrementAndGet());
+
+        broker = new SimpleBrokerMessageHandler(clientInbound, clientOutbound, brokerChannel, List.of("/user", "/queue"));
+        broker.start();
+        subscribeRecipient();
+
+        SimpMessagingTemplate messagingTemplate = new SimpMessagingTemplate(brokerChannel);
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+        converter.setObjectMapper(new ObjectMapper().findAndRegisterModules());
+        messagingTemplate.setMessageConverter(converter);
+
+        UserService userService = new UserService(null, meterRegistry) {
+            @Override
+            public Boolean existsByEmail(String email) {
+                return true;
+            }
+        };
+        MessagePersistenceService persistence = new MessagePersistenceService(null, null, meterRegistry) {
+            @Override
+            public boolean enqueue(Message message, boolean delivered) {
+                message.setTimestamp(LocalDateTime.now());
+                return true;
+            }
+        };
+
+        InProcessCluster cluster = new InProcessCluster();
+        router = new ClusterMessageRouter(
+                new OutboundMessageCoalescer(messagingTemplate, meterRegistry), cluster, cluster,
+                new DefaultSimpUserRegistry(), meterRegistry);
+        ReflectionTestUtils.setField(router, "nodeId", "benchmark-node");
+        ReflectionTestUtils.setField(router, "brokerMode", "simple");
+        router.joinCluster();
+        connectRecipient();
+
+        chatController = new ChatController(messagingTemplate, userService, null, null, persistence, router, BenchmarkFixtures.messageDeduplicator(), null, meterRegistry);
+
+        message = new Message();
+        message.setSenderEmail(BenchmarkFixtures.SENDER);
+        message.setRecipientEmail(BenchmarkFixtures.RECIPIENT);
+        message.setContent("Hey, are we still on for the release review at 3pm?");
+    }
+
+    @TearDown
+    public void tearDown() {
+        router.leaveCluster();
+        broker.stop();
+    }
+
+    @Benchmark
+    public long sendMessage() {
+        chatController.sendMessage(message, sender);
+        return framesToClients.get();
+    }
+
+    /**
+     * Subscribe a fake session to the recipient's resolved user destination.
+     */
+    private void subscribeRecipient() {
+        SimpMessageHeaderAccessor subscribe = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        subscribe.setSessionId(SESSION_ID);
+        subscribe.setSubscriptionId("sub-0");
+        subscribe.setDestination("/user/" + BenchmarkFixtures.RECIPIENT + "/queue/messages");
+        broker.handleMessage(MessageBuilder.createMessage(new byte[0], subscribe.getMessageHeaders()));
+    }
+
+    /**
+     * Make the router see the recipient as connected to this node.
+     */
+    private void connectRecipient() {
+        SimpMessageHeaderAccessor connectAck = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT_ACK);
+        connectAck.setSessionId(SESSION_ID);
+        router.onSessionConnected(new SessionConnectedEvent(
+                this,
+                MessageBuilder.createMessage(new byte[0], connectAck.getMessageHeaders()),
+                () -> BenchmarkFixtures.RECIPIENT));
+    }
+}
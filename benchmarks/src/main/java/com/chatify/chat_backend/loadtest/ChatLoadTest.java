@@ -0,0 +1,280 @@
+package com.chatify.chat_backend.loadtest;
+
+import com.chatify.chat_backend.ChatBackendApplication;
+import com.chatify.chat_backend.dto.AuthResponseDTO;
+import com.chatify.chat_backend.dto.Message;
+import com.chatify.chat_backend.dto.UserLoginDTO;
+import com.chatify.chat_backend.dto.UserRegistrationDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end capacity test for one chat node.
+ *
+ * Registers and logs in N synthetic users through /api/auth, opens one STOMP session
+ * per user on /ws-native, and drives /app/sendMessage with a configurable pattern.
+ * Every message carries its send time, so the receiving session records the full
+ * delivery latency (client -> server -> broker -> client) in an HDR histogram.
+ *
+ * Arguments (key=value):
+ *   target=http://host:port   node to test; when absent an embedded node on H2 is started
+ *   users=100                 synthetic users / STOMP sessions
+ *   rate=2                    messages per second per user
+ *   duration=30               measured seconds, after warmup
+ *   warmup=10                 seconds of load before recording starts
+ *   pattern=pairs             pairs (0->1, 1->0, ...), fan-in (all -> user 0) or random
+ *   output=loadtest-latency.hgrm  full percentile distribution
+ */
+public final class ChatLoadTest {
+
+    private static final String PASSWORD = "load-test-password";
+
+    private final Map<String, String> options;
+    private final int users;
+    private final int rate;
+    private final int durationSeconds;
+    private final int warmupSeconds;
+    private final String pattern;
+
+    private final Recorder latencyMicros = new Recorder(3);
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private ChatLoadTest(Map<String, String> options) {
+        this.options = options;
+        this.users = Integer.parseInt(options.getOrDefault("users", "100"));
+        this.rate = Integer.parseInt(options.getOrDefault("rate", "2"));
+        this.durationSeconds = Integer.parseInt(options.getOrDefault("duration", "30"));
+        this.warmupSeconds = Integer.parseInt(options.getOrDefault("warmup", "10"));
+        this.pattern = options.getOrDefault("pattern", "pairs");
+        if (users < 2) {
+            throw new IllegalArgumentException("users must be at least 2");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator > 0) {
+                options.put(arg.substring(0, separator), arg.substring(separator + 1));
+            }
+        }
+        new ChatLoadTest(options).run();
+    }
+
+    private void run() throws Exception {
+        ConfigurableApplicationContext embeddedNode = null;
+        String target = options.get("target");
+        if (target == null) {
+            embeddedNode = startEmbeddedNode();
+            int port = ((WebServerApplicationContext) embeddedNode).getWebServer().getPort();
+            target = "http://localhost:" + port;
+        }
+
+        try {
+            List<String> emails = new ArrayList<>(users);
+            for (int i = 0; i < users; i++) {
+                emails.add("load-" + i + "-" + System.nanoTime() + "@chatify.test");
+            }
+            List<String> tokens = registerAndLogin(target, emails);
+            List<StompSession> sessions = connect(target, tokens);
+
+            System.out.printf("%d sessions connected to %s, pattern=%s, %d msg/s per user%n",
+                    sessions.size(), target, pattern, rate);
+            drive(sessions, emails);
+            sessions.forEach(StompSession::disconnect);
+        } finally {
+            if (embeddedNode != null) {
+                embeddedNode.close();
+            }
+        }
+    }
+
+    /** ----------- Setup ----------- */
+
+    private ConfigurableApplicationContext startEmbeddedNode() {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("server.port", 0);
+        properties.put("spring.datasource.url", "jdbc:h2:mem:chatify-loadtest;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE");
+        properties.put("spring.datasource.username", "sa");
+        properties.put("spring.datasource.password", "");
+        properties.put("spring.datasource.hikari.maximum-pool-size", 20);
+        properties.put("spring.jpa.hibernate.ddl-auto", "create");
+        properties.put("jwt.secret", Base64.getEncoder().encodeToString(
+                "load-test-secret-load-test-secret-0123456789".getBytes()));
+        properties.put("app.jwt.refresh-token.expiration-ms", 86_400_000L);
+
+        return new SpringApplicationBuilder(ChatBackendApplication.class)
+                .properties(properties)
+                .run();
+    }
+
+    private List<String> registerAndLogin(String target, List<String> emails) throws Exception {
+        RestTemplate rest = new RestTemplate();
+        // BCrypt dominates here, spread it over a few threads
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(16, users));
+        try {
+            List<Future<String>> logins = new ArrayList<>(emails.size());
+            for (String email : emails) {
+                logins.add(executor.submit(() -> {
+                    String username = email.substring(0, email.indexOf('@'));
+                    rest.postForObject(target + "/api/auth/register",
+                            new UserRegistrationDTO(username, email, PASSWORD), String.class);
+                    AuthResponseDTO response = rest.postForObject(target + "/api/auth/login",
+                            new UserLoginDTO(email, PASSWORD), AuthResponseDTO.class);
+                    return response.getAccessToken();
+                }));
+            }
+            List<String> tokens = new ArrayList<>(emails.size());
+            for (Future<String> login : logins) {
+                tokens.add(login.get());
+            }
+            return tokens;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private List<StompSession> connect(String target, List<String> tokens) throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+        converter.setObjectMapper(objectMapper);
+
+        WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+        stompClient.setMessageConverter(converter);
+
+        String url = target.replaceFirst("^http", "ws") + "/ws-native";
+        List<StompSession> sessions = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            StompHeaders connectHeaders = new StompHeaders();
+            connectHeaders.add("Authorization", "Bearer " + token);
+            StompSession session = stompClient
+                    .connectAsync(url, new WebSocketHttpHeaders(), connectHeaders, new StompSessionHandlerAdapter() {})
+                    .get(10, TimeUnit.SECONDS);
+            session.subscribe("/user/queue/messages", new LatencyRecordingHandler());
+            sessions.add(session);
+        }
+        return sessions;
+    }
+
+    /** ----------- Load ----------- */
+
+    private void drive(List<StompSession> sessions, List<String> emails) throws Exception {
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors()));
+        long periodNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+
+        for (int i = 0; i < sessions.size(); i++) {
+            StompSession session = sessions.get(i);
+            String sender = emails.get(i);
+            int index = i;
+            // Spread the first sends over one period so users do not fire in lockstep
+            long initialDelay = ThreadLocalRandom.current().nextLong(periodNanos);
+            scheduler.scheduleAtFixedRate(
+                    () -> send(session, sender, emails.get(recipientIndex(index))),
+                    initialDelay, periodNanos, TimeUnit.NANOSECONDS);
+        }
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(warmupSeconds));
+        latencyMicros.reset();
+        long sentBefore = sent.get();
+        long receivedBefore = received.get();
+        long start = System.nanoTime();
+
+        Thread.sleep(TimeUnit.SECONDS.toMillis(durationSeconds));
+
+        Histogram histogram = latencyMicros.getIntervalHistogram();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        scheduler.shutdownNow();
+        report(histogram, (sent.get() - sentBefore) / seconds, (received.get() - receivedBefore) / seconds);
+    }
+
+    private int recipientIndex(int senderIndex) {
+        return switch (pattern) {
+            case "fan-in" -> senderIndex == 0 ? 1 : 0;
+            case "random" -> {
+                int other = ThreadLocalRandom.current().nextInt(users - 1);
+                yield other >= senderIndex ? other + 1 : other;
+            }
+            default -> (senderIndex ^ 1) < users ? (senderIndex ^ 1) : 0;
+        };
+    }
+
+    private void send(StompSession session, String sender, String recipient) {
+        Message message = new Message();
+        message.setSenderEmail(sender);
+        message.setRecipientEmail(recipient);
+        message.setContent(Long.toString(System.nanoTime()));
+        try {
+            session.send("/app/sendMessage", message);
+            sent.incrementAndGet();
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+        }
+    }
+
+    private void report(Histogram histogram, double sentPerSecond, double receivedPerSecond) throws Exception {
+        System.out.printf("users=%d pattern=%s duration=%ds%n", users, pattern, durationSeconds);
+        System.out.printf("throughput: sent %.1f msg/s, delivered %.1f msg/s, send failures %d%n",
+                sentPerSecond, receivedPerSecond, failed.get());
+        System.out.printf("latency (ms): p50=%.2f p99=%.2f p999=%.2f max=%.2f (%d samples)%n",
+                histogram.getValueAtPercentile(50) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0,
+                histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMaxValue() / 1000.0,
+                histogram.getTotalCount());
+
+        String output = options.getOrDefault("output", "loadtest-latency.hgrm");
+        try (PrintStream out = new PrintStream(new FileOutputStream(output))) {
+            // Values in ms, same format as HdrHistogram's plotter expects
+            histogram.outputPercentileDistribution(out, 1000.0);
+        }
+        System.out.println("percentile distribution written to " + output);
+    }
+
+    /**
+     * Messages carry System.nanoTime() of the send as content; sender and receiver share the JVM clock.
+     */
+    private class LatencyRecordingHandler implements StompFrameHandler {
+
+        @Override
+        public Type getPayloadType(StompHeaders headers) {
+            return Message.class;
+        }
+
+        @Override
+        public void handleFrame(StompHeaders headers, Object payload) {
+            long sentAt = Long.parseLong(((Message) payload).getContent());
+            latencyMicros.recordValue(Math.max(0, (System.nanoTime() - sentAt) / 1000));
+            received.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.chatify.chat_backend.cluster;
+
+import com.chatify.chat_backend.dto.Message;
+
+/**
+ * One item forwarded between nodes by JdbcCluster; exactly one field is set.
+ */
+public record ClusterEnvelope(Message message, RoomMembershipChange membershipChange, ReceiptNotice receipt) {
+
+    public static ClusterEnvelope of(Message message) {
+        return new ClusterEnvelope(message, null, null);
+    }
+
+    public static ClusterEnvelope of(RoomMembershipChange change) {
+        return new ClusterEnvelope(null, change, null);
+    }
+
+    public static ClusterEnvelope of(ReceiptNotice receipt) {
+        return new ClusterEnvelope(null, null, receipt);
+    }
+}
@@ -0,0 +1,237 @@
+package com.chatify.chat_backend.cluster;
+
+import com.chatify.chat_backend.dto.Message;
+import com.chatify.chat_backend.service.OutboundMessageCoalescer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Delivers private messages to the node that holds the recipient's sessions.
+ * Local recipients get the message from this node's broker; remote ones get it
+ * forwarded to their node only, never broadcast to the whole cluster.
+ * Room messages are published to the room topic on every node, once per node and
+ * not once per member. Receipts follow the same path as private messages.
+ * With the external broker relay (app.websocket.broker.mode=relay) the broker
+ * already resolves users and topics across nodes, so everything is delivered locally.
+ */
+@Service
+public class ClusterMessageRouter {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterMessageRouter.class);
+
+    @Value("${app.cluster.node-id:${random.uuid}}")
+    private String nodeId;
+
+    @Value("${app.websocket.broker.mode:simple}")
+    private String brokerMode;
+
+    private final OutboundMessageCoalescer outbound;
+    private final ClusterSessionRegistry sessionRegistry;
+    private final ClusterTransport transport;
+    private final SimpUserRegistry userRegistry;
+
+    // sessionId -> email and email -> sessionIds, for sessions on this node only
+    private final Map<String, String> localSessions = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> localSessionsByEmail = new ConcurrentHashMap<>();
+
+    public ClusterMessageRouter(
+            OutboundMessageCoalescer outbound,
+            ClusterSessionRegistry sessionRegistry,
+            ClusterTransport transport,
+            SimpUserRegistry userRegistry,
+            MeterRegistry meterRegistry) {
+        this.outbound = outbound;
+        this.sessionRegistry = sessionRegistry;
+        this.transport = transport;
+        this.userRegistry = userRegistry;
+
+        Gauge.builder("websocket.sessions.active", localSessions, Map::size)
+                .description("Authenticated STOMP sessions on this node")
+                .register(meterRegistry);
+        Gauge.builder("websocket.users.connected", localSessionsByEmail, Map::size)
+                .description("Distinct users with at least one session on this node")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void joinCluster() {
+        transport.join(nodeId, this::deliverLocally);
+        transport.joinReceipts(nodeId, notice -> outbound.sendReceipt(notice.recipientEmail(), notice.receipt()));
+        // Nothing is known to be written yet, hold back catch-up replays until the first report
+        sessionRegistry.persistedThrough(nodeId, LocalDateTime.MIN);
+    }
+
+    @PreDestroy
+    public void leaveCluster() {
+        transport.leave(nodeId);
+        sessionRegistry.nodeRemoved(nodeId);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Deliver a private message to every session of its recipient.
+     * @return false if the recipient has no session on any node
+     */
+    public boolean route(Message message) {
+        String recipient = message.getRecipientEmail();
+        if (isBrokerRelay()) {
+            deliverLocally(message);
+            return true;
+        }
+
+        boolean delivered = false;
+        if (localSessionsByEmail.containsKey(recipient)) {
+            deliverLocally(message);
+            delivered = true;
+        }
+        for (String owner : sessionRegistry.findNodes(recipient)) {
+            if (owner.equals(nodeId)) {
+                continue;
+            }
+            if (transport.send(owner, message)) {
+                delivered = true;
+            } else {
+                log.warn("Node {} owns sessions of {} but is unreachable", owner, recipient);
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * Deliver a receipt to every session of the user it is addressed to.
+     */
+    public void routeReceipt(ReceiptNotice notice) {
+        String recipient = notice.recipientEmail();
+        if (isBrokerRelay()) {
+            outbound.sendReceipt(recipient, notice.receipt());
+            return;
+        }
+
+        if (localSessionsByEmail.containsKey(recipient)) {
+            outbound.sendReceipt(recipient, notice.receipt());
+        }
+        for (String owner : sessionRegistry.findNodes(recipient)) {
+            if (!owner.equals(nodeId) && !transport.sendReceipt(owner, notice)) {
+                log.warn("Node {} owns sessions of {} but is unreachable", owner, recipient);
+            }
+        }
+    }
+
+    /**
+     * Publish a room message to the subscribers of its topic on every node.
+     */
+    public void routeToRoom(Message message) {
+        deliverLocally(message);
+        if (!isBrokerRelay()) {
+            transport.broadcast(nodeId, message);
+        }
+    }
+
+    /**
+     * @return true if the user has a session on any node. In relay mode the answer comes
+     *         from the user registry the nodes broadcast through the broker, which lags
+     *         behind remote disconnects by up to one broadcast interval.
+     */
+    public boolean isOnline(String email) {
+        if (isBrokerRelay()) {
+            return userRegistry.getUser(email) != null;
+        }
+        return localSessionsByEmail.containsKey(email)
+                || !sessionRegistry.findNodes(email).isEmpty();
+    }
+
+    /**
+     * Publish this node's write-behind watermark, see MessagePersistenceService.getPersistedThrough.
+     */
+    public void reportPersistedThrough(LocalDateTime time) {
+        sessionRegistry.persistedThrough(nodeId, time);
+    }
+
+    /**
+     * @return true once every node has written all messages timestamped at or before time
+     */
+    public boolean isPersistedThrough(LocalDateTime time) {
+        return sessionRegistry.isPersistedThrough(time);
+    }
+
+    /**
+     * @return true if the user has a session on this node
+     */
+    public boolean hasLocalSession(String email) {
+        return localSessionsByEmail.containsKey(email);
+    }
+
+    private void deliverLocally(Message message) {
+        if (message.getRoomId() != null) {
+            outbound.sendToRoom(message);
+            return;
+        }
+        // Sent as-is, or batched with the next few messages when coalescing is enabled
+        outbound.send(message);
+    }
+
+    private boolean isBrokerRelay() {
+        return "relay".equalsIgnoreCase(brokerMode);
+    }
+
+    /** ----------- Local session tracking ----------- */
+
+    @EventListener
+    public void onSessionConnected(SessionConnectedEvent event) {
+        Principal user = event.getUser();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        if (user == null || sessionId == null) {
+            return;
+        }
+
+        String email = user.getName();
+        localSessions.put(sessionId, email);
+        localSessionsByEmail.compute(email, (key, sessions) -> {
+            if (sessions == null) {
+                sessions = ConcurrentHashMap.newKeySet();
+                // First session of this user on this node
+                sessionRegistry.userConnected(email, nodeId);
+            }
+            sessions.add(sessionId);
+            return sessions;
+        });
+    }
+
+    @EventListener
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        String email = localSessions.remove(event.getSessionId());
+        if (email == null) {
+            return;
+        }
+
+        localSessionsByEmail.computeIfPresent(email, (key, sessions) -> {
+            sessions.remove(event.getSessionId());
+            if (!sessions.isEmpty()) {
+                return sessions;
+            }
+            // Last session of this user on this node
+            sessionRegistry.userDisconnected(email, nodeId);
+            return null;
+        });
+    }
+}
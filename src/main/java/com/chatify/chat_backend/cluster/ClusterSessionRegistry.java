@@ -0,0 +1,43 @@
+package com.chatify.chat_backend.cluster;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+/**
+ * Cluster-wide view of which chat node holds the WebSocket sessions of each user.
+ * Nodes only report the first and last session of a user, not every connection.
+ * It also holds each node's write-behind watermark, so a node can tell when messages
+ * queued anywhere in the cluster have reached the database.
+ */
+public interface ClusterSessionRegistry {
+
+    /**
+     * The user now has at least one session on this node.
+     */
+    void userConnected(String email, String nodeId);
+
+    /**
+     * The user's last session on this node is gone.
+     */
+    void userDisconnected(String email, String nodeId);
+
+    /**
+     * Forget everything owned by a node, e.g. when it shuts down.
+     */
+    void nodeRemoved(String nodeId);
+
+    /**
+     * @return ids of the nodes holding sessions for this user, empty if offline
+     */
+    Set<String> findNodes(String email);
+
+    /**
+     * The node has written every message timestamped at or before time; replaces its previous report.
+     */
+    void persistedThrough(String nodeId, LocalDateTime time);
+
+    /**
+     * @return true once every node has reported a watermark at or after time
+     */
+    boolean isPersistedThrough(LocalDateTime time);
+}
@@ -0,0 +1,53 @@
+package com.chatify.chat_backend.cluster;
+
+import com.chatify.chat_backend.dto.Message;
+
+import java.util.function.Consumer;
+
+/**
+ * Node-to-node channel used to forward a private message or a receipt to the
+ * nodes that own the recipient's sessions, or a room message or membership change
+ * to every other node.
+ */
+public interface ClusterTransport {
+
+    /**
+     * Start receiving messages addressed to nodeId.
+     */
+    void join(String nodeId, Consumer<Message> receiver);
+
+    /**
+     * Start receiving room membership changes made on other nodes.
+     */
+    void joinMembershipChanges(String nodeId, Consumer<RoomMembershipChange> receiver);
+
+    /**
+     * Start receiving receipts addressed to nodeId.
+     */
+    void joinReceipts(String nodeId, Consumer<ReceiptNotice> receiver);
+
+    /**
+     * Stop receiving messages, membership changes and receipts addressed to nodeId.
+     */
+    void leave(String nodeId);
+
+    /**
+     * @return false if the target node is unknown to the transport
+     */
+    boolean send(String nodeId, Message message);
+
+    /**
+     * @return false if the target node is unknown to the transport
+     */
+    boolean sendReceipt(String nodeId, ReceiptNotice notice);
+
+    /**
+     * Send to every node except fromNodeId, each delivering to its own subscribers.
+     */
+    void broadcast(String fromNodeId, Message message);
+
+    /**
+     * Send to every node except fromNodeId.
+     */
+    void broadcastMembershipChange(String fromNodeId, RoomMembershipChange change);
+}
@@ -0,0 +1,132 @@
+package com.chatify.chat_backend.cluster;
+
+import com.chatify.chat_backend.dto.Message;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Registry and transport held in memory by one instance. Each application context
+ * gets its own instance, which is simply the single-node setup. Several contexts in
+ * one JVM (tests, local experiments) form a cluster only when they are handed the
+ * same instance, e.g. registered as a bean with app.cluster.transport set to
+ * something other than in-process; they never share routing state by accident.
+ * Nodes in separate processes use JdbcCluster (app.cluster.transport=jdbc).
+ */
+@Component
+@ConditionalOnProperty(name = "app.cluster.transport", havingValue = "in-process", matchIfMissing = true)
+public class InProcessCluster implements ClusterSessionRegistry, ClusterTransport {
+
+    private final Map<String, Set<String>> nodesByEmail = new ConcurrentHashMap<>();
+    private final Map<String, Consumer<Message>> receivers = new ConcurrentHashMap<>();
+    private final Map<String, Consumer<RoomMembershipChange>> membershipReceivers = new ConcurrentHashMap<>();
+    private final Map<String, Consumer<ReceiptNotice>> receiptReceivers = new ConcurrentHashMap<>();
+    private final Map<String, LocalDateTime> persistedThroughByNode = new ConcurrentHashMap<>();
+
+    @Override
+    public void userConnected(String email, String nodeId) {
+        nodesByEmail.computeIfAbsent(email, key -> ConcurrentHashMap.newKeySet()).add(nodeId);
+    }
+
+    @Override
+    public void userDisconnected(String email, String nodeId) {
+        nodesByEmail.computeIfPresent(email, (key, nodes) -> {
+            nodes.remove(nodeId);
+            return nodes.isEmpty() ? null : nodes;
+        });
+    }
+
+    @Override
+    public void nodeRemoved(String nodeId) {
+        persistedThroughByNode.remove(nodeId);
+        for (String email : nodesByEmail.keySet()) {
+            userDisconnected(email, nodeId);
+        }
+    }
+
+    @Override
+    public Set<String> findNodes(String email) {
+        Set<String> nodes = nodesByEmail.get(email);
+        return nodes == null ? Set.of() : Set.copyOf(nodes);
+    }
+
+    @Override
+    public void persistedThrough(String nodeId, LocalDateTime time) {
+        persistedThroughByNode.put(nodeId, time);
+    }
+
+    @Override
+    public boolean isPersistedThrough(LocalDateTime time) {
+        for (LocalDateTime watermark : persistedThroughByNode.values()) {
+            if (watermark.isBefore(time)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void join(String nodeId, Consumer<Message> receiver) {
+        receivers.put(nodeId, receiver);
+    }
+
+    @Override
+    public void joinMembershipChanges(String nodeId, Consumer<RoomMembershipChange> receiver) {
+        membershipReceivers.put(nodeId, receiver);
+    }
+
+    @Override
+    public void joinReceipts(String nodeId, Consumer<ReceiptNotice> receiver) {
+        receiptReceivers.put(nodeId, receiver);
+    }
+
+    @Override
+    public void leave(String nodeId) {
+        receivers.remove(nodeId);
+        membershipReceivers.remove(nodeId);
+        receiptReceivers.remove(nodeId);
+    }
+
+    @Override
+    public boolean send(String nodeId, Message message) {
+        Consumer<Message> receiver = receivers.get(nodeId);
+        if (receiver == null) {
+            return false;
+        }
+        receiver.accept(message);
+        return true;
+    }
+
+    @Override
+    public boolean sendReceipt(String nodeId, ReceiptNotice notice) {
+        Consumer<ReceiptNotice> receiver = receiptReceivers.get(nodeId);
+        if (receiver == null) {
+            return false;
+        }
+        receiver.accept(notice);
+        return true;
+    }
+
+    @Override
+    public void broadcast(String fromNodeId, Message message) {
+        receivers.forEach((nodeId, receiver) -> {
+            if (!nodeId.equals(fromNodeId)) {
+                receiver.accept(message);
+            }
+        });
+    }
+
+    @Override
+    public void broadcastMembershipChange(String fromNodeId, RoomMembershipChange change) {
+        membershipReceivers.forEach((nodeId, receiver) -> {
+            if (!nodeId.equals(fromNodeId)) {
+                receiver.accept(change);
+            }
+        });
+    }
+}
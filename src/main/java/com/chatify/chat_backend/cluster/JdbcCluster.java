@@ -0,0 +1,475 @@
+package com.chatify.chat_backend.cluster;
+
+import com.chatify.chat_backend.dto.Message;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.context.WebServerInitializedEvent;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Registry and transport for nodes running as separate processes on one database
+ * (app.cluster.transport=jdbc).
+ *
+ * Nodes and the users with sessions on them are rows in cluster_nodes and
+ * cluster_sessions. Every node refreshes its heartbeat each heartbeat-interval-ms;
+ * one silent for node-timeout-ms counts as gone: findNodes and isPersistedThrough
+ * ignore it, and whichever node notices first deletes its rows. A node that was only
+ * paused finds its row gone on the next heartbeat and registers itself and its users again.
+ *
+ * Messages, membership changes and receipts are POSTed as JSON batches to
+ * /internal/cluster/deliver on the target node, at the address it registered once its
+ * web server started, with app.cluster.secret in a header. Each target has one sender
+ * thread, so a node receives what another one forwards in order. A batch that cannot
+ * be delivered is dropped and counted, like a message for an unreachable node; the
+ * stored copy stays in chat_messages. A node that just joined receives broadcasts
+ * from the others within one heartbeat.
+ *
+ * Properties:
+ *   app.cluster.secret                  required, the same on every node
+ *   app.cluster.advertised-host         default this host's address, as other nodes reach it
+ *   app.cluster.heartbeat-interval-ms   default 2000
+ *   app.cluster.node-timeout-ms         default 10000
+ *   app.cluster.forward-queue-capacity  default 10000 per target node
+ */
+@Component
+@ConditionalOnProperty(name = "app.cluster.transport", havingValue = "jdbc")
+@DependsOn("entityManagerFactory") // cluster_nodes and cluster_sessions must exist
+public class JdbcCluster implements ClusterSessionRegistry, ClusterTransport {
+
+    private static final Logger log = LoggerFactory.getLogger(JdbcCluster.class);
+
+    public static final String DELIVER_PATH = "/internal/cluster/deliver";
+    public static final String SECRET_HEADER = "X-Cluster-Secret";
+
+    private static final int MAX_BATCH = 100;
+
+    private static final String DELETE_NODE_SQL = "DELETE FROM cluster_nodes WHERE node_id = ?";
+    private static final String DELETE_NODE_SESSIONS_SQL = "DELETE FROM cluster_sessions WHERE node_id = ?";
+    private static final String INSERT_NODE_SQL =
+            "INSERT INTO cluster_nodes (node_id, address, persisted_through, heartbeat_at) VALUES (?, ?, NULL, ?)";
+    private static final String HEARTBEAT_SQL = "UPDATE cluster_nodes SET heartbeat_at = ?, address = ? WHERE node_id = ?";
+    private static final String PERSISTED_THROUGH_SQL = "UPDATE cluster_nodes SET persisted_through = ? WHERE node_id = ?";
+
+    private static final String DELETE_DEAD_SESSIONS_SQL = """
+            DELETE FROM cluster_sessions
+            WHERE node_id IN (SELECT node_id FROM cluster_nodes WHERE heartbeat_at < ?)
+            """;
+    private static final String DELETE_DEAD_NODES_SQL = "DELETE FROM cluster_nodes WHERE heartbeat_at < ?";
+
+    private static final String LIVE_NODES_SQL =
+            "SELECT node_id, address FROM cluster_nodes WHERE heartbeat_at >= ? AND address IS NOT NULL";
+
+    private static final String INSERT_SESSION_SQL = "INSERT INTO cluster_sessions (email, node_id) VALUES (?, ?)";
+    private static final String DELETE_SESSION_SQL = "DELETE FROM cluster_sessions WHERE email = ? AND node_id = ?";
+
+    private static final String FIND_NODES_SQL = """
+            SELECT s.node_id FROM cluster_sessions s
+            JOIN cluster_nodes n ON n.node_id = s.node_id
+            WHERE s.email = ? AND n.heartbeat_at >= ?
+            """;
+
+    // A node that has reported nothing yet (NULL) holds everyone back
+    private static final String BEHIND_SQL = """
+            SELECT COUNT(*) FROM cluster_nodes
+            WHERE heartbeat_at >= ? AND (persisted_through IS NULL OR persisted_through < ?)
+            """;
+
+    @Value("${app.cluster.secret:}")
+    private String secret;
+
+    @Value("${app.cluster.advertised-host:}")
+    private String advertisedHost;
+
+    @Value("${app.cluster.heartbeat-interval-ms:2000}")
+    private long heartbeatIntervalMs;
+
+    @Value("${app.cluster.node-timeout-ms:10000}")
+    private long nodeTimeoutMs;
+
+    @Value("${app.cluster.forward-queue-capacity:10000}")
+    private int forwardQueueCapacity;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(2)).build();
+    private final Counter forwardedCounter;
+    private final Counter droppedCounter;
+
+    // This process's node, set by join()
+    private volatile String localNodeId;
+    private volatile String localAddress;
+    private volatile Consumer<Message> messageReceiver;
+    private volatile Consumer<RoomMembershipChange> membershipReceiver;
+    private volatile Consumer<ReceiptNotice> receiptReceiver;
+    // Users with a session on this node, registered again if the node was taken for gone
+    private final Set<String> localUsers = ConcurrentHashMap.newKeySet();
+
+    // nodeId -> base URL of every live node with a started web server, replaced on each heartbeat
+    private volatile Map<String, String> liveNodes = Map.of();
+    private final Map<String, NodeLink> links = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+
+    public JdbcCluster(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.forwardedCounter = meterRegistry.counter("chat.cluster.forwarded", "result", "sent");
+        this.droppedCounter = meterRegistry.counter("chat.cluster.forwarded", "result", "dropped");
+    }
+
+    @PostConstruct
+    public void start() {
+        if (secret.isEmpty()) {
+            throw new IllegalStateException("app.cluster.secret must be set for app.cluster.transport=jdbc");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::heartbeat, heartbeatIntervalMs, heartbeatIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+        links.values().forEach(NodeLink::stop);
+    }
+
+    /**
+     * Other nodes can forward to this one from now on.
+     */
+    @EventListener
+    public void onWebServerInitialized(WebServerInitializedEvent event) {
+        if (event.getApplicationContext().getServerNamespace() != null) {
+            return; // Management server
+        }
+        localAddress = "http://" + host() + ":" + event.getWebServer().getPort();
+        if (localNodeId != null) {
+            jdbcTemplate.update(HEARTBEAT_SQL, Timestamp.valueOf(LocalDateTime.now()), localAddress, localNodeId);
+        }
+    }
+
+    private String host() {
+        if (!advertisedHost.isEmpty()) {
+            return advertisedHost;
+        }
+        try {
+            return InetAddress.getLocalHost().getHostAddress();
+        } catch (UnknownHostException e) {
+            log.warn("Could not resolve the local address, set app.cluster.advertised-host", e);
+            return "localhost";
+        }
+    }
+
+    /** ----------- Registry ----------- */
+
+    @Override
+    public void userConnected(String email, String nodeId) {
+        if (nodeId.equals(localNodeId)) {
+            localUsers.add(email);
+        }
+        insertSession(email, nodeId);
+    }
+
+    @Override
+    public void userDisconnected(String email, String nodeId) {
+        if (nodeId.equals(localNodeId)) {
+            localUsers.remove(email);
+        }
+        jdbcTemplate.update(DELETE_SESSION_SQL, email, nodeId);
+    }
+
+    @Override
+    public void nodeRemoved(String nodeId) {
+        if (nodeId.equals(localNodeId)) {
+            localUsers.clear();
+        }
+        jdbcTemplate.update(DELETE_NODE_SESSIONS_SQL, nodeId);
+        jdbcTemplate.update(DELETE_NODE_SQL, nodeId);
+    }
+
+    @Override
+    public Set<String> findNodes(String email) {
+        return Set.copyOf(jdbcTemplate.queryForList(FIND_NODES_SQL, String.class, email, liveSince()));
+    }
+
+    @Override
+    public void persistedThrough(String nodeId, LocalDateTime time) {
+        // MIN does not fit a SQL timestamp, NULL means the same
+        Timestamp watermark = time.equals(LocalDateTime.MIN) ? null : Timestamp.valueOf(time);
+        jdbcTemplate.update(PERSISTED_THROUGH_SQL, watermark, nodeId);
+    }
+
+    @Override
+    public boolean isPersistedThrough(LocalDateTime time) {
+        Long behind = jdbcTemplate.queryForObject(BEHIND_SQL, Long.class, liveSince(), Timestamp.valueOf(time));
+        return behind != null && behind == 0;
+    }
+
+    private void insertSession(String email, String nodeId) {
+        try {
+            jdbcTemplate.update(INSERT_SESSION_SQL, email, nodeId);
+        } catch (DuplicateKeyException e) {
+            // Already registered, e.g. again after a heartbeat found the node gone
+        }
+    }
+
+    private Timestamp liveSince() {
+        return Timestamp.valueOf(LocalDateTime.now().minusNanos(TimeUnit.MILLISECONDS.toNanos(nodeTimeoutMs)));
+    }
+
+    /** ----------- Heartbeat ----------- */
+
+    // Also clears rows a previous run with the same node id left behind
+    private void registerNode() {
+        jdbcTemplate.update(DELETE_NODE_SESSIONS_SQL, localNodeId);
+        jdbcTemplate.update(DELETE_NODE_SQL, localNodeId);
+        jdbcTemplate.update(INSERT_NODE_SQL, localNodeId, localAddress, Timestamp.valueOf(LocalDateTime.now()));
+    }
+
+    private void heartbeat() {
+        String nodeId = localNodeId;
+        if (nodeId == null) {
+            return;
+        }
+        try {
+            if (jdbcTemplate.update(HEARTBEAT_SQL, Timestamp.valueOf(LocalDateTime.now()), localAddress, nodeId) == 0) {
+                log.warn("Node {} was taken for gone, registering it again", nodeId);
+                registerNode();
+                localUsers.forEach(email -> insertSession(email, nodeId));
+            }
+            Timestamp liveSince = liveSince();
+            jdbcTemplate.update(DELETE_DEAD_SESSIONS_SQL, liveSince);
+            jdbcTemplate.update(DELETE_DEAD_NODES_SQL, liveSince);
+            refreshLiveNodes(liveSince);
+        } catch (DataAccessException e) {
+            log.warn("Cluster heartbeat of {} failed", nodeId, e);
+        }
+    }
+
+    private void refreshLiveNodes(Timestamp liveSince) {
+        Map<String, String> nodes = new HashMap<>();
+        jdbcTemplate.query(LIVE_NODES_SQL, rs -> {
+            nodes.put(rs.getString("node_id"), rs.getString("address"));
+        }, liveSince);
+        liveNodes = Map.copyOf(nodes);
+        links.keySet().removeIf(nodeId -> {
+            if (nodes.containsKey(nodeId)) {
+                return false;
+            }
+            links.get(nodeId).stop();
+            return true;
+        });
+    }
+
+    /**
+     * @return the node's address, looked up if it joined since the last heartbeat; null if unknown
+     */
+    private String address(String nodeId) {
+        String address = liveNodes.get(nodeId);
+        if (address == null) {
+            refreshLiveNodes(liveSince());
+            address = liveNodes.get(nodeId);
+        }
+        return address;
+    }
+
+    /** ----------- Transport ----------- */
+
+    @Override
+    public void join(String nodeId, Consumer<Message> receiver) {
+        localNodeId = nodeId;
+        messageReceiver = receiver;
+        registerNode();
+    }
+
+    @Override
+    public void joinMembershipChanges(String nodeId, Consumer<RoomMembershipChange> receiver) {
+        membershipReceiver = receiver;
+    }
+
+    @Override
+    public void joinReceipts(String nodeId, Consumer<ReceiptNotice> receiver) {
+        receiptReceiver = receiver;
+    }
+
+    @Override
+    public void leave(String nodeId) {
+        messageReceiver = null;
+        membershipReceiver = null;
+        receiptReceiver = null;
+    }
+
+    @Override
+    public boolean send(String nodeId, Message message) {
+        return forward(nodeId, ClusterEnvelope.of(message));
+    }
+
+    @Override
+    public boolean sendReceipt(String nodeId, ReceiptNotice notice) {
+        return forward(nodeId, ClusterEnvelope.of(notice));
+    }
+
+    @Override
+    public void broadcast(String fromNodeId, Message message) {
+        broadcast(fromNodeId, ClusterEnvelope.of(message));
+    }
+
+    @Override
+    public void broadcastMembershipChange(String fromNodeId, RoomMembershipChange change) {
+        broadcast(fromNodeId, ClusterEnvelope.of(change));
+    }
+
+    private void broadcast(String fromNodeId, ClusterEnvelope envelope) {
+        for (String nodeId : liveNodes.keySet()) {
+            if (!nodeId.equals(fromNodeId)) {
+                forward(nodeId, envelope);
+            }
+        }
+    }
+
+    /**
+     * @return false if the node is unknown or its queue is full
+     */
+    private boolean forward(String nodeId, ClusterEnvelope envelope) {
+        if (address(nodeId) == null) {
+            return false;
+        }
+        if (!links.computeIfAbsent(nodeId, NodeLink::new).offer(envelope)) {
+            droppedCounter.increment();
+            log.warn("Forward queue to node {} is full, dropped a cluster message", nodeId);
+            return false;
+        }
+        return true;
+    }
+
+    /** ----------- Receiving, see ClusterController ----------- */
+
+    public boolean isAuthorized(String presentedSecret) {
+        return presentedSecret != null && MessageDigest.isEqual(
+                secret.getBytes(StandardCharsets.UTF_8), presentedSecret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Hand a batch forwarded by another node to this node's receivers, in order.
+     */
+    public void receive(List<ClusterEnvelope> batch) {
+        for (ClusterEnvelope envelope : batch) {
+            if (envelope.message() != null) {
+                deliver(messageReceiver, envelope.message());
+            } else if (envelope.membershipChange() != null) {
+                deliver(membershipReceiver, envelope.membershipChange());
+            } else if (envelope.receipt() != null) {
+                deliver(receiptReceiver, envelope.receipt());
+            }
+        }
+    }
+
+    private static <T> void deliver(Consumer<T> receiver, T item) {
+        if (receiver != null) {
+            receiver.accept(item);
+        }
+    }
+
+    /**
+     * Queue and sender thread for one target node.
+     */
+    private final class NodeLink implements Runnable {
+        private final String nodeId;
+        private final BlockingQueue<ClusterEnvelope> queue = new ArrayBlockingQueue<>(forwardQueueCapacity);
+        private final Thread thread;
+
+        private NodeLink(String nodeId) {
+            this.nodeId = nodeId;
+            this.thread = new Thread(this, "cluster-forward-" + nodeId);
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        private boolean offer(ClusterEnvelope envelope) {
+            return queue.offer(envelope);
+        }
+
+        private void stop() {
+            thread.interrupt();
+        }
+
+        @Override
+        public void run() {
+            List<ClusterEnvelope> batch = new ArrayList<>(MAX_BATCH);
+            while (true) {
+                try {
+                    batch.add(queue.take());
+                } catch (InterruptedException e) {
+                    return;
+                }
+                queue.drainTo(batch, MAX_BATCH - 1);
+                post(batch);
+                batch.clear();
+            }
+        }
+
+        private void post(List<ClusterEnvelope> batch) {
+            String address = liveNodes.get(nodeId);
+            try {
+                if (address == null) {
+                    throw new IOException("node is gone");
+                }
+                HttpRequest request = HttpRequest.newBuilder(URI.create(address + DELIVER_PATH))
+                        .timeout(Duration.ofSeconds(5))
+                        .header("Content-Type", "application/json")
+                        .header(SECRET_HEADER, secret)
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(batch)))
+                        .build();
+                int status = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                if (status / 100 != 2) {
+                    throw new IOException("HTTP " + status);
+                }
+                forwardedCounter.increment(batch.size());
+            } catch (IOException e) {
+                droppedCounter.increment(batch.size());
+                log.warn("Could not forward {} cluster messages to node {}: {}", batch.size(), nodeId, e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.chatify.chat_backend.cluster;
+
+import com.chatify.chat_backend.dto.ReceiptDTO;
+
+/**
+ * A receipt on its way to the user whose messages were acknowledged, forwarded to
+ * the nodes holding that user's sessions.
+ */
+public record ReceiptNotice(String recipientEmail, ReceiptDTO receipt) {
+}
@@ -0,0 +1,8 @@
+package com.chatify.chat_backend.cluster;
+
+/**
+ * A user joined or left a room, told to every node so none of them keeps a stale
+ * membership cached or a removed member subscribed to the room topic.
+ */
+public record RoomMembershipChange(long roomId, String email, boolean removed) {
+}
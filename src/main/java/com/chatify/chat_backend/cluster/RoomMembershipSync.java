@@ -0,0 +1,128 @@
+package com.chatify.chat_backend.cluster;
+
+import com.chatify.chat_backend.service.RoomService;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.security.Principal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Applies room membership changes on every node: the membership cache entry is
+ * dropped and, for a removed member, their subscriptions to the room topic on this
+ * node are ended by an UNSUBSCRIBE sent to the broker on their behalf.
+ * Changes committed on this node are forwarded to the others through the ClusterTransport.
+ */
+@Component
+public class RoomMembershipSync {
+
+    private final RoomService roomService;
+    private final ClusterTransport transport;
+    private final ClusterMessageRouter messageRouter;
+    private final MessageChannel brokerChannel;
+
+    // sessionId -> subscriptionId -> room topic subscription, for sessions on this node only
+    private final Map<String, Map<String, RoomSubscription>> roomSubscriptions = new ConcurrentHashMap<>();
+
+    public RoomMembershipSync(
+            RoomService roomService,
+            ClusterTransport transport,
+            ClusterMessageRouter messageRouter,
+            @Qualifier("brokerChannel") MessageChannel brokerChannel) {
+        this.roomService = roomService;
+        this.transport = transport;
+        this.messageRouter = messageRouter;
+        this.brokerChannel = brokerChannel;
+    }
+
+    @PostConstruct
+    public void start() {
+        roomService.addMembershipListener(this::onLocalChange);
+        // Left again with every other receiver in ClusterMessageRouter.leaveCluster
+        transport.joinMembershipChanges(messageRouter.getNodeId(), this::apply);
+    }
+
+    private void onLocalChange(RoomMembershipChange change) {
+        apply(change);
+        transport.broadcastMembershipChange(messageRouter.getNodeId(), change);
+    }
+
+    private void apply(RoomMembershipChange change) {
+        roomService.invalidateMembership(change.roomId(), change.email());
+        if (change.removed()) {
+            endSubscriptions(change.roomId(), change.email());
+        }
+    }
+
+    // Removals are rare, a scan of this node's room subscriptions is fine
+    private void endSubscriptions(long roomId, String email) {
+        roomSubscriptions.forEach((sessionId, subscriptions) ->
+                subscriptions.entrySet().removeIf(entry -> {
+                    RoomSubscription subscription = entry.getValue();
+                    if (subscription.roomId() != roomId || !subscription.email().equals(email)) {
+                        return false;
+                    }
+                    unsubscribe(sessionId, entry.getKey());
+                    return true;
+                }));
+    }
+
+    private void unsubscribe(String sessionId, String subscriptionId) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.UNSUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        brokerChannel.send(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+    }
+
+    /** ----------- Local subscription tracking ----------- */
+
+    /**
+     * Published before the inbound interceptors run, so this may also record a
+     * subscription that is rejected afterwards; ending it later is a no-op.
+     */
+    @EventListener
+    public void onSessionSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        Principal user = event.getUser();
+        if (user == null || accessor.getSessionId() == null || accessor.getSubscriptionId() == null) {
+            return;
+        }
+        Long roomId;
+        try {
+            roomId = RoomService.roomIdOf(accessor.getDestination());
+        } catch (IllegalArgumentException e) {
+            return; // Rejected by the inbound interceptor
+        }
+        if (roomId != null) {
+            roomSubscriptions.computeIfAbsent(accessor.getSessionId(), key -> new ConcurrentHashMap<>())
+                    .put(accessor.getSubscriptionId(), new RoomSubscription(roomId, user.getName()));
+        }
+    }
+
+    @EventListener
+    public void onSessionUnsubscribe(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        Map<String, RoomSubscription> subscriptions = roomSubscriptions.get(accessor.getSessionId());
+        if (subscriptions != null && accessor.getSubscriptionId() != null) {
+            subscriptions.remove(accessor.getSubscriptionId());
+        }
+    }
+
+    @EventListener
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        roomSubscriptions.remove(event.getSessionId());
+    }
+
+    private record RoomSubscription(long roomId, String email) {
+    }
+}
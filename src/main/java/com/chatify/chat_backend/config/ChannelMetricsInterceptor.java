@@ -0,0 +1,58 @@
+package com.chatify.chat_backend.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures how long messages wait for a channel thread and how long handlers run.
+ * Works for any executor (thread pool or virtual threads) since it hooks into
+ * the channel rather than the executor.
+ */
+public class ChannelMetricsInterceptor implements ExecutorChannelInterceptor {
+
+    private final Timer queueWait;
+    private final Timer taskTime;
+    private final AtomicInteger activeTasks = new AtomicInteger();
+
+    // Start time of the handler running on the current thread, long[] avoids boxing
+    private final ThreadLocal<long[]> handlerStart = ThreadLocal.withInitial(() -> new long[1]);
+
+    public ChannelMetricsInterceptor(MeterRegistry meterRegistry, String channel) {
+        this.queueWait = Timer.builder("websocket.channel.queue.wait")
+                .description("Time between a message being sent to the channel and a thread picking it up")
+                .tag("channel", channel)
+                .register(meterRegistry);
+        this.taskTime = Timer.builder("websocket.channel.task")
+                .description("Time spent in one message handler")
+                .tag("channel", channel)
+                .register(meterRegistry);
+        Gauge.builder("websocket.channel.active.tasks", activeTasks, AtomicInteger::get)
+                .tag("channel", channel)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+        Long sentAt = message.getHeaders().getTimestamp();
+        if (sentAt != null) {
+            queueWait.record(Math.max(0, System.currentTimeMillis() - sentAt), TimeUnit.MILLISECONDS);
+        }
+        activeTasks.incrementAndGet();
+        handlerStart.get()[0] = System.nanoTime();
+        return message;
+    }
+
+    @Override
+    public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+        taskTime.record(System.nanoTime() - handlerStart.get()[0], TimeUnit.NANOSECONDS);
+        activeTasks.decrementAndGet();
+    }
+}
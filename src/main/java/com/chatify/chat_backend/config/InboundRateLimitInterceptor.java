@@ -0,0 +1,125 @@
+package com.chatify.chat_backend.config;
+
+import com.chatify.chat_backend.util.TokenBucketRateLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits how fast clients may SEND to /app destinations, per session and per user
+ * (all sessions of one principal together). Runs in preSend, on the WebSocket
+ * thread, so rejected messages never reach the inbound executor or the database.
+ * Rejected messages are dropped and counted in websocket.rate-limit.rejected.
+ *
+ * Properties (rate = sustained messages per second, burst = bucket size):
+ *   app.websocket.rate-limit.enabled          default true
+ *   app.websocket.rate-limit.session.rate     default 10, session.burst default 20
+ *   app.websocket.rate-limit.user.rate        default 20, user.burst default 40
+ */
+@Component
+public class InboundRateLimitInterceptor implements ChannelInterceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(InboundRateLimitInterceptor.class);
+
+    @Value("${app.websocket.rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.websocket.rate-limit.session.rate:10}")
+    private double sessionRate;
+
+    @Value("${app.websocket.rate-limit.session.burst:20}")
+    private int sessionBurst;
+
+    @Value("${app.websocket.rate-limit.user.rate:20}")
+    private double userRate;
+
+    @Value("${app.websocket.rate-limit.user.burst:40}")
+    private int userBurst;
+
+    /** How often buckets of users that stopped sending are dropped. */
+    @Value("${app.websocket.rate-limit.sweep-interval-ms:60000}")
+    private long sweepIntervalMs;
+
+    private final MeterRegistry meterRegistry;
+
+    private TokenBucketRateLimiter sessionLimiter;
+    private TokenBucketRateLimiter userLimiter;
+    private ScheduledExecutorService sweeper;
+    private Counter sessionRejected;
+    private Counter userRejected;
+
+    public InboundRateLimitInterceptor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void initialize() {
+        sessionLimiter = new TokenBucketRateLimiter(sessionRate, sessionBurst);
+        userLimiter = new TokenBucketRateLimiter(userRate, userBurst);
+        sessionRejected = meterRegistry.counter("websocket.rate-limit.rejected", "scope", "session");
+        userRejected = meterRegistry.counter("websocket.rate-limit.rejected", "scope", "user");
+        Gauge.builder("websocket.rate-limit.buckets", userLimiter, TokenBucketRateLimiter::size)
+                .description("Per-user rate limit buckets held in memory")
+                .register(meterRegistry);
+
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ws-rate-limit-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(userLimiter::sweep, sweepIntervalMs, sweepIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        sweeper.shutdownNow();
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        // Read headers directly, no accessor is created for the common case
+        MessageHeaders headers = message.getHeaders();
+        if (!enabled || SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE) {
+            return message;
+        }
+
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+        if (sessionId != null && !sessionLimiter.tryAcquire(sessionId)) {
+            sessionRejected.increment();
+            log.debug("Session {} exceeded its send rate, message dropped", sessionId);
+            return null;
+        }
+
+        Principal user = SimpMessageHeaderAccessor.getUser(headers);
+        if (user != null && !userLimiter.tryAcquire(user.getName())) {
+            userRejected.increment();
+            log.debug("User {} exceeded their send rate, message dropped", user.getName());
+            return null;
+        }
+        return message;
+    }
+
+    @EventListener
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        sessionLimiter.remove(event.getSessionId());
+    }
+}
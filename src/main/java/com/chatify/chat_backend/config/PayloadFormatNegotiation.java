@@ -0,0 +1,170 @@
+package com.chatify.chat_backend.config;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-session choice between JSON and CBOR payloads.
+ *
+ * Inbound: a SEND frame with content-type application/cbor is decoded by the CBOR
+ * converter, anything else by the default JSON one.
+ * Outbound: a session connected to the raw WebSocket endpoint that sends
+ * "accept-payload: application/cbor" on CONNECT gets MESSAGE bodies as CBOR in
+ * binary frames (content-type application/octet-stream, payload-format: cbor).
+ * SockJS sessions always stay on JSON since SockJS cannot carry binary frames.
+ */
+@Component
+public class PayloadFormatNegotiation {
+
+    private static final Logger log = LoggerFactory.getLogger(PayloadFormatNegotiation.class);
+
+    public static final MimeType APPLICATION_CBOR = MimeType.valueOf("application/cbor");
+    public static final String ACCEPT_PAYLOAD_HEADER = "accept-payload";
+    public static final String PAYLOAD_FORMAT_HEADER = "payload-format";
+
+    private static final String NATIVE_TRANSPORT_ATTRIBUTE = "chatify.nativeTransport";
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+    private final CBORMapper cborMapper = new CBORMapper();
+    private final Set<String> cborSessions = ConcurrentHashMap.newKeySet();
+
+    public PayloadFormatNegotiation() {
+        cborMapper.findAndRegisterModules();
+    }
+
+    /**
+     * Marks sessions opened on the raw WebSocket endpoint, the only ones that may use binary frames.
+     */
+    public HandshakeInterceptor nativeTransportMarker() {
+        return new HandshakeInterceptor() {
+            @Override
+            public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                           WebSocketHandler wsHandler, Map<String, Object> attributes) {
+                attributes.put(NATIVE_TRANSPORT_ATTRIBUTE, Boolean.TRUE);
+                return true;
+            }
+
+            @Override
+            public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                       WebSocketHandler wsHandler, Exception exception) {
+            }
+        };
+    }
+
+    /**
+     * Decodes inbound application/cbor payloads. Strict content type matching keeps
+     * it from being picked for outbound messages, which stay JSON by default.
+     */
+    public MessageConverter cborMessageConverter() {
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter(APPLICATION_CBOR);
+        converter.setObjectMapper(cborMapper);
+        converter.setStrictContentTypeMatch(true);
+        return converter;
+    }
+
+    /**
+     * Record the payload format requested by an authenticated CONNECT.
+     */
+    public void onConnect(StompHeaderAccessor accessor) {
+        String accept = accessor.getFirstNativeHeader(ACCEPT_PAYLOAD_HEADER);
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        boolean nativeTransport = attributes != null && Boolean.TRUE.equals(attributes.get(NATIVE_TRANSPORT_ATTRIBUTE));
+
+        if (nativeTransport && accept != null && APPLICATION_CBOR.toString().equalsIgnoreCase(accept.trim())) {
+            cborSessions.add(accessor.getSessionId());
+        }
+    }
+
+    @EventListener
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        cborSessions.remove(event.getSessionId());
+    }
+
+    /**
+     * Re-encodes JSON MESSAGE frames as CBOR for sessions that asked for it.
+     */
+    public ChannelInterceptor outboundInterceptor() {
+        return new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                MessageHeaders headers = message.getHeaders();
+                String sessionId = SimpMessageHeaderAccessor.getSessionId(headers);
+                if (sessionId == null || !cborSessions.contains(sessionId)) {
+                    return message;
+                }
+                if (SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE
+                        || !(message.getPayload() instanceof byte[] json)
+                        || json.length == 0
+                        || !isJson(headers.get(MessageHeaders.CONTENT_TYPE))) {
+                    return message;
+                }
+
+                try {
+                    byte[] cbor = toCbor(json);
+                    StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+                    // octet-stream is what makes STOMP send a binary WebSocket frame
+                    accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+                    accessor.setNativeHeader(PAYLOAD_FORMAT_HEADER, "cbor");
+                    return MessageBuilder.createMessage(cbor, accessor.getMessageHeaders());
+                } catch (IOException e) {
+                    log.warn("Could not re-encode message for session {} as CBOR, sending JSON", sessionId, e);
+                    return message;
+                }
+            }
+        };
+    }
+
+    /**
+     * The broker hands over payloads already serialized as JSON, shared by every session
+     * of the destination. They are re-encoded token by token straight into cborMapper's
+     * generator, one pass without an intermediate tree or String.
+     */
+    private byte[] toCbor(byte[] json) throws IOException {
+        ByteArrayOutputStream cbor = new ByteArrayOutputStream(json.length);
+        try (JsonParser parser = jsonMapper.getFactory().createParser(json);
+             JsonGenerator generator = cborMapper.getFactory().createGenerator(cbor)) {
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+        }
+        return cbor.toByteArray();
+    }
+
+    private static boolean isJson(Object contentType) {
+        if (contentType instanceof MimeType mimeType) {
+            return MimeTypeUtils.APPLICATION_JSON.isCompatibleWith(mimeType);
+        }
+        if (contentType instanceof String value) {
+            return MimeTypeUtils.APPLICATION_JSON.isCompatibleWith(MimeType.valueOf(value));
+        }
+        return false;
+    }
+}
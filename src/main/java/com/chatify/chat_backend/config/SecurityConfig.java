@@ -3,6 +3,9 @@ package com.chatify.chat_backend.config;
 
 import com.chatify.chat_backend.security.CustomUserDetailsService;
 import com.chatify.chat_backend.security.JwtAuthenticationFilter;
+import com.chatify.chat_backend.security.TimedPasswordEncoder;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -22,13 +25,23 @@ public class SecurityConfig {
 
     private final CustomUserDetailsService userDetailsService;
     private final JwtAuthenticationFilter jwtAuthenticationFilter;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * BCrypt cost factor for new hashes. Existing hashes with a lower cost are
+     * re-hashed on the user's next successful login (see AuthService.login).
+     */
+    @Value("${app.auth.bcrypt.strength:10}")
+    private int bcryptStrength;
 
     // ✅ Best Practice: Constructor Injection
     public SecurityConfig(
             CustomUserDetailsService userDetailsService,
-            JwtAuthenticationFilter jwtAuthenticationFilter) {
+            JwtAuthenticationFilter jwtAuthenticationFilter,
+            MeterRegistry meterRegistry) {
         this.userDetailsService = userDetailsService;
         this.jwtAuthenticationFilter = jwtAuthenticationFilter;
+        this.meterRegistry = meterRegistry;
     }
 
     /**
@@ -42,8 +55,10 @@ public class SecurityConfig {
 
                 // ✅ Configure authorization rules
                 .authorizeHttpRequests(authz -> authz
-                        .requestMatchers("/ws/**", "/ws").permitAll()
+                        .requestMatchers("/ws/**", "/ws", "/ws-native").permitAll()
                         .requestMatchers("/api/auth/**").permitAll() // Allow login/register
+                        .requestMatchers("/actuator/health").permitAll() // Load balancer probes
+                        .requestMatchers("/internal/cluster/**").permitAll() // Node to node, checked against app.cluster.secret
                         .anyRequest().authenticated() // Require auth for others
                 )
 
@@ -62,11 +77,11 @@ public class SecurityConfig {
     }
 
     /**
-     * Password encoder - BCrypt is industry standard
+     * Password encoder - BCrypt is industry standard, timed as auth.bcrypt
      */
     @Bean
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        return new TimedPasswordEncoder(new BCryptPasswordEncoder(bcryptStrength), meterRegistry);
     }
 
     /**
@@ -81,7 +96,8 @@ public class SecurityConfig {
     }
 
     /**
-     * Authentication manager - used by AuthService to validate credentials
+     * Authentication manager - AuthService.login checks passwords itself, on the
+     * password hashing pool, so this is only kept for other authentication flows
      */
     @Bean
     public AuthenticationManager authenticationManager(AuthenticationConfiguration authConfig) throws Exception {
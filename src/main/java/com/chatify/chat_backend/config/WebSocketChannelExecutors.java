@@ -0,0 +1,89 @@
+package com.chatify.chat_backend.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.messaging.simp.config.ChannelRegistration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Builds the executors of the clientInbound / clientOutbound channels.
+ *
+ * Properties, with channel = inbound or outbound:
+ *   app.websocket.{channel}-channel.executor         pool (default) or virtual
+ *   app.websocket.{channel}-channel.core-pool-size   pool threads, default 2 x CPUs
+ *   app.websocket.{channel}-channel.max-pool-size    only used once the queue is full
+ *   app.websocket.{channel}-channel.queue-capacity   default unbounded, like Spring
+ *   app.websocket.{channel}-channel.max-concurrency  virtual threads running at once
+ *
+ * Virtual threads need a Java 21 runtime. Handlers here do blocking JPA work, so
+ * they are a good fit once the connection pool is sized for it.
+ */
+@Component
+public class WebSocketChannelExecutors {
+
+    private static final int CPUS = Runtime.getRuntime().availableProcessors();
+
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+
+    public WebSocketChannelExecutors(Environment environment, MeterRegistry meterRegistry) {
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Set the executor of one channel and add the channel metrics interceptor.
+     * @param channel "inbound" or "outbound"
+     */
+    public void configure(ChannelRegistration registration, String channel) {
+        String prefix = "app.websocket." + channel + "-channel.";
+        String type = environment.getProperty(prefix + "executor", "pool");
+
+        if ("virtual".equalsIgnoreCase(type)) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("ws-" + channel + "-");
+            executor.setVirtualThreads(true);
+            executor.setConcurrencyLimit(property(prefix + "max-concurrency", 10_000));
+            registration.executor(executor);
+        } else if ("pool".equalsIgnoreCase(type)) {
+            ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+            executor.setThreadNamePrefix("ws-" + channel + "-");
+            executor.setCorePoolSize(property(prefix + "core-pool-size", CPUS * 2));
+            executor.setMaxPoolSize(property(prefix + "max-pool-size", Integer.MAX_VALUE));
+            executor.setQueueCapacity(property(prefix + "queue-capacity", Integer.MAX_VALUE));
+            executor.setKeepAliveSeconds(60);
+            registration.taskExecutor(executor);
+            registerPoolGauges(executor, channel);
+        } else {
+            throw new IllegalStateException("Unknown " + prefix + "executor: " + type);
+        }
+
+        instrument(registration, channel);
+    }
+
+    /**
+     * Add the channel metrics interceptor only, keeping the channel's executor.
+     * Used for the broker channel, which runs on the sending thread by default.
+     */
+    public void instrument(ChannelRegistration registration, String channel) {
+        registration.interceptors(new ChannelMetricsInterceptor(meterRegistry, channel));
+    }
+
+    private void registerPoolGauges(ThreadPoolTaskExecutor executor, String channel) {
+        Gauge.builder("websocket.channel.executor.pool.size", executor, ThreadPoolTaskExecutor::getPoolSize)
+                .tag("channel", channel)
+                .register(meterRegistry);
+        Gauge.builder("websocket.channel.executor.active", executor, ThreadPoolTaskExecutor::getActiveCount)
+                .tag("channel", channel)
+                .register(meterRegistry);
+        Gauge.builder("websocket.channel.executor.queue.size", executor, ThreadPoolTaskExecutor::getQueueSize)
+                .tag("channel", channel)
+                .register(meterRegistry);
+    }
+
+    private int property(String key, int defaultValue) {
+        return environment.getProperty(key, Integer.class, defaultValue);
+    }
+}
@@ -1,11 +1,19 @@
 package com.chatify.chat_backend.config;
 
 import com.chatify.chat_backend.security.JwtUtil;
+import com.chatify.chat_backend.security.TokenRevocationRegistry;
+import com.chatify.chat_backend.service.RoomService;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.MessageConverter;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.simp.config.StompBrokerRelayRegistration;
 import org.springframework.messaging.simp.stomp.StompCommand;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.messaging.support.ChannelInterceptor;
@@ -14,14 +22,91 @@ import org.springframework.security.authentication.UsernamePasswordAuthenticatio
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+
+import java.util.List;
 
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     private final JwtUtil jwtUtil;
+    private final TokenRevocationRegistry revocationRegistry;
+    private final WebSocketChannelExecutors channelExecutors;
+    private final PayloadFormatNegotiation payloadFormats;
+    private final RoomService roomService;
+    private final InboundRateLimitInterceptor rateLimitInterceptor;
+
+    // CONNECT authentication outcomes
+    private final Counter connectAccepted;
+    private final Counter connectMissingToken;
+    private final Counter connectInvalidToken;
+    private final Counter connectRevokedToken;
+
+    /**
+     * Keep messages of one session in order even when the channel executors run
+     * several threads (inbound: preserveReceiveOrder, outbound: preservePublishOrder).
+     */
+    @Value("${app.websocket.preserve-order:true}")
+    private boolean preserveOrder;
+
+    // Transport limits. Spring applies them to every endpoint, /ws and /ws-native alike,
+    // so the defaults are Spring's own and leave the SockJS endpoint as it always was.
+    @Value("${app.websocket.transport.send-buffer-size-limit:524288}")
+    private int sendBufferSizeLimit;
+
+    @Value("${app.websocket.transport.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+
+    @Value("${app.websocket.transport.message-size-limit:65536}")
+    private int messageSizeLimit;
+
+    /**
+     * "simple": in-memory broker, users only reach sessions on the same JVM (default).
+     * "relay": external STOMP broker (RabbitMQ, ActiveMQ...) shared by every chat node.
+     */
+    @Value("${app.websocket.broker.mode:simple}")
+    private String brokerMode;
+
+    @Value("${app.websocket.broker.relay-host:localhost}")
+    private String relayHost;
+
+    @Value("${app.websocket.broker.relay-port:61613}")
+    private int relayPort;
+
+    @Value("${app.websocket.broker.client-login:guest}")
+    private String relayClientLogin;
+
+    @Value("${app.websocket.broker.client-passcode:guest}")
+    private String relayClientPasscode;
 
-    public WebSocketConfig(JwtUtil jwtUtil){
+    @Value("${app.websocket.broker.system-login:guest}")
+    private String relaySystemLogin;
+
+    @Value("${app.websocket.broker.system-passcode:guest}")
+    private String relaySystemPasscode;
+
+    @Value("${app.websocket.broker.virtual-host:}")
+    private String relayVirtualHost;
+
+    public WebSocketConfig(
+            JwtUtil jwtUtil,
+            TokenRevocationRegistry revocationRegistry,
+            WebSocketChannelExecutors channelExecutors,
+            PayloadFormatNegotiation payloadFormats,
+            RoomService roomService,
+            InboundRateLimitInterceptor rateLimitInterceptor,
+            MeterRegistry meterRegistry){
         this.jwtUtil = jwtUtil;
+        this.revocationRegistry = revocationRegistry;
+        this.channelExecutors = channelExecutors;
+        this.payloadFormats = payloadFormats;
+        this.roomService = roomService;
+        this.rateLimitInterceptor = rateLimitInterceptor;
+
+        this.connectAccepted = meterRegistry.counter("websocket.connect", "outcome", "accepted");
+        this.connectMissingToken = meterRegistry.counter("websocket.connect", "outcome", "missing_token");
+        this.connectInvalidToken = meterRegistry.counter("websocket.connect", "outcome", "invalid_token");
+        this.connectRevokedToken = meterRegistry.counter("websocket.connect", "outcome", "revoked_token");
     }
 
     @Override
@@ -31,6 +116,27 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         registry.addEndpoint("/ws")
                 .setAllowedOriginPatterns("*")
                 .withSockJS();
+
+        // Raw WebSocket endpoint for modern clients: no SockJS framing, binary (CBOR) payloads allowed
+        registry.addEndpoint("/ws-native")
+                .setAllowedOriginPatterns("*")
+                .addInterceptors(payloadFormats.nativeTransportMarker());
+
+        registry.setPreserveReceiveOrder(preserveOrder);
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendBufferSizeLimit(sendBufferSizeLimit)
+                .setSendTimeLimit(sendTimeLimitMs)
+                .setMessageSizeLimit(messageSizeLimit);
+    }
+
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        // Only used for frames sent with content-type application/cbor
+        messageConverters.add(payloadFormats.cborMessageConverter());
+        return true; // keep the default JSON converters
     }
 
 
@@ -41,16 +147,56 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         // Prefix for messages from client to server (@MessageMapping)
         registry.setApplicationDestinationPrefixes("/app");
 
-        // Enable simple in-memory broker for broadcasting messages
-        registry.enableSimpleBroker("/topic", "/queue", "/user");
+        if ("relay".equalsIgnoreCase(brokerMode)) {
+            configureBrokerRelay(registry);
+        } else if ("simple".equalsIgnoreCase(brokerMode)) {
+            // Enable simple in-memory broker for broadcasting messages. /user is not a broker
+            // prefix: those subscriptions reach the broker translated to /queue/...-user{session},
+            // and the untranslated copy would replace them under the same subscription id.
+            registry.enableSimpleBroker("/topic", "/queue");
+        } else {
+            throw new IllegalStateException("Unknown app.websocket.broker.mode: " + brokerMode);
+        }
 
         // Prefix for sending messages to specific users
         registry.setUserDestinationPrefix("/user");
+
+        registry.setPreservePublishOrder(preserveOrder);
+
+        // Time spent handing messages to the broker (synchronous, on the sending thread)
+        channelExecutors.instrument(registry.configureBrokerChannel(), "broker");
+    }
+
+
+    /**
+     * Relay /topic and /queue to an external STOMP broker.
+     * Messages for users connected to another node and the user registry itself are
+     * broadcast through the broker, so convertAndSendToUser works across nodes.
+     */
+    private void configureBrokerRelay(MessageBrokerRegistry registry) {
+        StompBrokerRelayRegistration relay = registry.enableStompBrokerRelay("/topic", "/queue")
+                .setRelayHost(relayHost)
+                .setRelayPort(relayPort)
+                .setClientLogin(relayClientLogin)
+                .setClientPasscode(relayClientPasscode)
+                .setSystemLogin(relaySystemLogin)
+                .setSystemPasscode(relaySystemPasscode)
+                .setUserDestinationBroadcast("/topic/unresolved-user-destination")
+                .setUserRegistryBroadcast("/topic/simp-user-registry");
+
+        if (!relayVirtualHost.isBlank()) {
+            relay.setVirtualHost(relayVirtualHost);
+        }
     }
 
 
     @Override
     public void configureClientInboundChannel(ChannelRegistration registration) {
+        channelExecutors.configure(registration, "inbound");
+
+        // Before anything else, so flooded messages are dropped on the WebSocket thread
+        registration.interceptors(rateLimitInterceptor);
+
         registration.interceptors(new ChannelInterceptor() {
 
             @Override
@@ -61,14 +207,23 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                 if (StompCommand.CONNECT.equals(accessor.getCommand())) {
                     String authHeader = accessor.getFirstNativeHeader("Authorization");
 
-                    if (authHeader != null && authHeader.startsWith("Bearer ")) {
+                    if (authHeader == null || !authHeader.startsWith("Bearer ")) {
+                        connectMissingToken.increment();
+                    } else {
                         String token = authHeader.substring(7);
-                        String email = jwtUtil.extractUsername(token);
+                        Claims claims = jwtUtil.validateAndGetClaims(token);
+                        String email = claims != null ? claims.getSubject() : null;
 
-                        if (email != null && jwtUtil.isTokenValid(token, email)) {
+                        if (email == null) {
+                            connectInvalidToken.increment();
+                        } else if (revocationRegistry.isRevoked(email, claims)) {
+                            connectRevokedToken.increment();
+                        } else {
                             UsernamePasswordAuthenticationToken auth =
                                     new UsernamePasswordAuthenticationToken(email, null, null);
                             accessor.setUser(auth);
+                            payloadFormats.onConnect(accessor);
+                            connectAccepted.increment();
                             return message;
                         }
                     }
@@ -77,8 +232,36 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                     throw new IllegalArgumentException("Invalid or missing authentication token");
                 }
 
+                // Room topics are only readable by members
+                if (StompCommand.SUBSCRIBE.equals(accessor.getCommand())) {
+                    // Brokers match subscriptions as patterns: /topic/rooms/** would cover every room
+                    String destination = accessor.getDestination();
+                    if (destination == null || destination.chars().anyMatch(c -> "*?{#".indexOf(c) >= 0)) {
+                        throw new IllegalArgumentException("Only exact destinations can be subscribed to");
+                    }
+                    Long roomId = RoomService.roomIdOf(accessor.getDestination());
+                    if (roomId != null && (accessor.getUser() == null
+                            || !roomService.isMember(roomId, accessor.getUser().getName()))) {
+                        throw new IllegalArgumentException("Not a member of room " + roomId);
+                    }
+                }
+
+                // Clients publish through @MessageMapping only, never straight to a broker topic
+                if (StompCommand.SEND.equals(accessor.getCommand())) {
+                    String destination = accessor.getDestination();
+                    if (destination == null || !destination.startsWith("/app/")) {
+                        throw new IllegalArgumentException("Messages can only be sent to /app destinations");
+                    }
+                }
+
                 return message;
             }
         });
     }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        channelExecutors.configure(registration, "outbound");
+        registration.interceptors(payloadFormats.outboundInterceptor());
+    }
 }
@@ -4,17 +4,27 @@ import com.chatify.chat_backend.dto.AuthResponseDTO;
 import com.chatify.chat_backend.dto.UserLoginDTO;
 import com.chatify.chat_backend.dto.UserRegistrationDTO;
 import com.chatify.chat_backend.service.AuthService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.web.bind.annotation.*;
 import com.chatify.chat_backend.security.JwtUtil;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/auth")
 @CrossOrigin(origins = "*")
 public class AuthController {
 
+    private static final Logger log = LoggerFactory.getLogger(AuthController.class);
+
     private final AuthService authService;
     private final JwtUtil jwtUtil; //
 
@@ -34,16 +44,27 @@ public class AuthController {
         }
     }
 
-    // Login user with email and password
+    // Login user with email and password.
+    // Async: the servlet thread is released while BCrypt runs on the password hashing pool
     @PostMapping("/login")
-    public ResponseEntity<?> login(@RequestBody UserLoginDTO loginDTO){
-        try {
-            AuthResponseDTO response = authService.login(loginDTO);
-            return ResponseEntity.ok(response);
-        } catch (Exception e) {
-            // SHOW THE ACTUAL ERROR - don't hide it
-            return ResponseEntity.status(401).body(e.getMessage());
-        }
+    public CompletableFuture<ResponseEntity<?>> login(@RequestBody UserLoginDTO loginDTO){
+        return authService.login(loginDTO)
+                .<ResponseEntity<?>>thenApply(ResponseEntity::ok)
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    if (cause instanceof RejectedExecutionException) {
+                        // ⚠️ Login storm: shed load instead of queueing without bound
+                        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                                .header(HttpHeaders.RETRY_AFTER, "1")
+                                .body("Too many login attempts, please retry");
+                    }
+                    if (cause instanceof BadCredentialsException) {
+                        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid email or password");
+                    }
+                    // Anything else is our fault, not the caller's: log it, don't echo it
+                    log.error("Login failed", cause);
+                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Login failed, please retry");
+                });
     }
 
     // Refresh Token
@@ -1,62 +1,189 @@
 package com.chatify.chat_backend.controller;
 
+import com.chatify.chat_backend.cluster.ClusterMessageRouter;
 import com.chatify.chat_backend.entity.ChatMessage;
 import com.chatify.chat_backend.entity.User;
 import com.chatify.chat_backend.repository.ChatMessageRepository;
 import com.chatify.chat_backend.repository.UserRepository;
+import com.chatify.chat_backend.service.MessageDeduplicator;
+import com.chatify.chat_backend.service.MessagePersistenceService;
+import com.chatify.chat_backend.service.RoomService;
 import com.chatify.chat_backend.service.UserService;
 import com.chatify.chat_backend.dto.Message;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.simp.SimpMessageSendingOperations;
 import org.springframework.stereotype.Controller;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.security.Principal;
-import java.time.LocalDateTime;
 
 @Controller
 public class ChatController {
+    private static final int MAX_CLIENT_MESSAGE_ID_LENGTH = 64;
+
     private final SimpMessageSendingOperations messagingTemplate;
     private final UserService userService;
     private final ChatMessageRepository chatMessageRepository;
     private final UserRepository userRepository;
+    private final MessagePersistenceService messagePersistenceService;
+    private final ClusterMessageRouter messageRouter;
+    private final MessageDeduplicator messageDeduplicator;
+    private final RoomService roomService;
+
+    private final Timer sendTimer;
+    private final Timer roomSendTimer;
+    private final Counter senderMismatch;
+    private final Counter unknownRecipient;
+    private final Counter notRoomMember;
+    private final Counter queueFull;
+    private final Counter duplicates;
 
     public ChatController(
             SimpMessageSendingOperations messagingTemplate,
             UserService userService,
             ChatMessageRepository chatMessageRepository,
-            UserRepository userRepository) {
+            UserRepository userRepository,
+            MessagePersistenceService messagePersistenceService,
+            ClusterMessageRouter messageRouter,
+            MessageDeduplicator messageDeduplicator,
+            RoomService roomService,
+            MeterRegistry meterRegistry) {
         this.messagingTemplate = messagingTemplate;
         this.userService = userService;
         this.chatMessageRepository = chatMessageRepository;
         this.userRepository = userRepository;
+        this.messagePersistenceService = messagePersistenceService;
+        this.messageRouter = messageRouter;
+        this.messageDeduplicator = messageDeduplicator;
+        this.roomService = roomService;
+
+        this.sendTimer = Timer.builder("chat.send")
+                .description("Time to validate, queue and route one message")
+                .tag("kind", "direct")
+                .register(meterRegistry);
+        this.roomSendTimer = Timer.builder("chat.send")
+                .description("Time to validate, queue and route one message")
+                .tag("kind", "room")
+                .register(meterRegistry);
+        this.senderMismatch = meterRegistry.counter("chat.send.rejected", "reason", "sender_mismatch");
+        this.unknownRecipient = meterRegistry.counter("chat.send.rejected", "reason", "unknown_recipient");
+        this.notRoomMember = meterRegistry.counter("chat.send.rejected", "reason", "not_room_member");
+        this.queueFull = meterRegistry.counter("chat.send.rejected", "reason", "queue_full");
+        this.duplicates = meterRegistry.counter("chat.send.duplicates");
     }
 
     @MessageMapping("/sendMessage")
-    @Transactional
     public void sendMessage(@Payload Message message, Principal principal) {
+        Timer.Sample sample = Timer.start();
+        try {
+            send(message, principal);
+        } finally {
+            sample.stop(sendTimer);
+        }
+    }
+
+    // Group message: stored once and published once to /topic/rooms/{roomId}
+    @MessageMapping("/rooms/{roomId}/send")
+    public void sendRoomMessage(@DestinationVariable Long roomId, @Payload Message message, Principal principal) {
+        Timer.Sample sample = Timer.start();
+        try {
+            sendToRoom(roomId, message, principal);
+        } finally {
+            sample.stop(roomSendTimer);
+        }
+    }
+
+    private void send(Message message, Principal principal) {
+        validateSender(message, principal);
+
+        // Validate recipient exists
+        if (!userService.existsByEmail(message.getRecipientEmail())) {
+            unknownRecipient.increment();
+            throw new IllegalArgumentException("Recipient does not exist: " + message.getRecipientEmail());
+        }
+        message.setRoomId(null);
+
+        if (!accept(message)) {
+            return;
+        }
+
+        // Offline recipients get it replayed on their next connect (OfflineMessageService)
+        boolean recipientOnline = messageRouter.isOnline(message.getRecipientEmail());
+
+        // Persistence is write-behind: queue first, so a full queue rejects the
+        // message instead of delivering it and silently losing the history
+        if (!messagePersistenceService.enqueue(message, recipientOnline)) {
+            queueFull.increment();
+            messageDeduplicator.forget(message); // let the client's retry through
+            throw new IllegalStateException("Server is busy, message was not sent");
+        }
 
+        // Delivered by this node or forwarded to the node holding the recipient's sessions
+        if (recipientOnline) {
+            messageRouter.route(message);
+        }
+    }
+
+    private void sendToRoom(Long roomId, Message message, Principal principal) {
+        if (principal == null) {
+            throw new SecurityException("Group messages require an authenticated session");
+        }
+        validateSender(message, principal);
+
+        // Cached lookup, independent of the room size
+        if (!roomService.isMember(roomId, message.getSenderEmail())) {
+            notRoomMember.increment();
+            throw new SecurityException("Not a member of room " + roomId);
+        }
+        message.setRoomId(roomId);
+        message.setRecipientEmail(null);
+
+        if (!accept(message)) {
+            return;
+        }
+
+        // Members catch up on what they missed through the room history, so no delivery state per member
+        if (!messagePersistenceService.enqueue(message, true)) {
+            queueFull.increment();
+            messageDeduplicator.forget(message);
+            throw new IllegalStateException("Server is busy, message was not sent");
+        }
+
+        messageRouter.routeToRoom(message);
+    }
+
+    private void validateSender(Message message, Principal principal) {
         // ✅ Validate if principal exists (when auth is enabled)
         if (principal != null) {
             String authenticatedEmail = principal.getName();
 
             // Validate sender email matches authenticated user
             if (!authenticatedEmail.equals(message.getSenderEmail())) {
+                senderMismatch.increment();
                 throw new SecurityException("Sender email does not match authenticated user");
             }
         }
+    }
 
-        // Validate recipient exists
-        if (!userService.existsByEmail(message.getRecipientEmail())) {
-            throw new IllegalArgumentException("Recipient does not exist: " + message.getRecipientEmail());
+    /**
+     * Checks shared by private and room messages. The timestamp is set by enqueue().
+     * @return false if the message is a resend and must be dropped
+     */
+    private boolean accept(Message message) {
+        String clientMessageId = message.getClientMessageId();
+        if (clientMessageId != null && clientMessageId.length() > MAX_CLIENT_MESSAGE_ID_LENGTH) {
+            throw new IllegalArgumentException("Client message id is longer than " + MAX_CLIENT_MESSAGE_ID_LENGTH);
         }
 
-        message.setTimestamp(LocalDateTime.now());
-        messagingTemplate.convertAndSendToUser(
-                message.getRecipientEmail(),
-                "/queue/messages",
-                message
-        );
+        // Resent after a reconnect: the first copy was already queued and delivered
+        if (!messageDeduplicator.markFirstSeen(message)) {
+            duplicates.increment();
+            return false;
+        }
+        return true;
     }
 }
@@ -0,0 +1,37 @@
+package com.chatify.chat_backend.controller;
+
+import com.chatify.chat_backend.cluster.ClusterEnvelope;
+import com.chatify.chat_backend.cluster.JdbcCluster;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+/**
+ * Node-to-node endpoint of JdbcCluster. Not behind JWT (see SecurityConfig), callers
+ * prove they are a node with app.cluster.secret instead.
+ */
+@RestController
+@ConditionalOnProperty(name = "app.cluster.transport", havingValue = "jdbc")
+public class ClusterController {
+
+    private final JdbcCluster cluster;
+
+    public ClusterController(JdbcCluster cluster) {
+        this.cluster = cluster;
+    }
+
+    // Messages, membership changes and receipts forwarded by another node, in its order
+    @PostMapping(JdbcCluster.DELIVER_PATH)
+    public ResponseEntity<Void> deliver(
+            @RequestHeader(value = JdbcCluster.SECRET_HEADER, required = false) String secret,
+            @RequestBody List<ClusterEnvelope> batch) {
+        if (!cluster.isAuthorized(secret)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        cluster.receive(batch);
+        return ResponseEntity.ok().build();
+    }
+}
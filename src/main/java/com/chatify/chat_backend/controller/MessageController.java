@@ -0,0 +1,94 @@
+package com.chatify.chat_backend.controller;
+
+import com.chatify.chat_backend.dto.ConversationPageDTO;
+import com.chatify.chat_backend.service.ChatHistoryService;
+import com.chatify.chat_backend.service.MessageExportService;
+import com.chatify.chat_backend.service.MessageSearchService;
+import com.chatify.chat_backend.service.ReceiptService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.security.Principal;
+
+@RestController
+@RequestMapping("/api/messages")
+@CrossOrigin(origins = "*")
+public class MessageController {
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    private final ChatHistoryService chatHistoryService;
+    private final MessageExportService messageExportService;
+    private final ReceiptService receiptService;
+    private final MessageSearchService messageSearchService;
+
+    public MessageController(
+            ChatHistoryService chatHistoryService,
+            MessageExportService messageExportService,
+            ReceiptService receiptService,
+            MessageSearchService messageSearchService) {
+        this.chatHistoryService = chatHistoryService;
+        this.messageExportService = messageExportService;
+        this.receiptService = receiptService;
+        this.messageSearchService = messageSearchService;
+    }
+
+    // Conversation history with another user, newest first.
+    // Pass the returned nextCursor back as ?cursor= to load older messages.
+    @GetMapping("/history")
+    public ResponseEntity<?> getHistory(
+            @RequestParam("with") String peerEmail,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit,
+            Principal principal) {
+        try {
+            ConversationPageDTO page = chatHistoryService.getConversationPage(
+                    principal.getName(), peerEmail, cursor, limit);
+            return ResponseEntity.ok(page);
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(e.getMessage()); // ❌ 400 Bad Request
+        }
+    }
+
+    // Full-text search over the current user's direct messages and rooms, newest first.
+    // Paged like /history: pass nextCursor back as ?cursor=
+    @GetMapping("/search")
+    public ResponseEntity<?> search(
+            @RequestParam("q") String query,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit,
+            Principal principal) {
+        try {
+            return ResponseEntity.ok(messageSearchService.search(principal.getName(), query, cursor, limit));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(e.getMessage()); // ❌ 400 Bad Request
+        }
+    }
+
+    // How far the other user has received / read the messages sent to them.
+    // A message is read if its timestamp is at or before the READ receipt's upTo.
+    @GetMapping("/receipts")
+    public ResponseEntity<?> getReceipts(@RequestParam("with") String peerEmail, Principal principal) {
+        return ResponseEntity.ok(receiptService.getReceipts(principal.getName(), peerEmail));
+    }
+
+    // Export every message of the current user as NDJSON, streamed row by row
+    @GetMapping("/export")
+    public ResponseEntity<?> export(Principal principal) {
+        long userId;
+        try {
+            // Before streaming: once the body has started, an error can no longer be a 400
+            userId = messageExportService.userId(principal.getName());
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(e.getMessage()); // ❌ 400 Bad Request
+        }
+        StreamingResponseBody body = out -> messageExportService.exportMessages(userId, out);
+        return ResponseEntity.ok()
+                .contentType(NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"messages.ndjson\"")
+                .body(body);
+    }
+}
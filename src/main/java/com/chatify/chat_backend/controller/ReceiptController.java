@@ -0,0 +1,28 @@
+package com.chatify.chat_backend.controller;
+
+import com.chatify.chat_backend.dto.ReceiptDTO;
+import com.chatify.chat_backend.service.ReceiptService;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.stereotype.Controller;
+
+import java.security.Principal;
+
+@Controller
+public class ReceiptController {
+    private final ReceiptService receiptService;
+
+    public ReceiptController(ReceiptService receiptService) {
+        this.receiptService = receiptService;
+    }
+
+    // Cumulative ack: "delivered/read everything from peerEmail up to upTo"
+    @MessageMapping("/receipts")
+    public void acknowledge(@Payload ReceiptDTO receipt, Principal principal) {
+        if (principal == null) {
+            throw new SecurityException("Receipts require an authenticated session");
+        }
+        // Also rejects peers that never sent this user a message
+        receiptService.acknowledge(principal.getName(), receipt);
+    }
+}
@@ -0,0 +1,85 @@
+package com.chatify.chat_backend.controller;
+
+import com.chatify.chat_backend.dto.ConversationPageDTO;
+import com.chatify.chat_backend.dto.RoomCreateDTO;
+import com.chatify.chat_backend.dto.RoomDTO;
+import com.chatify.chat_backend.service.ChatHistoryService;
+import com.chatify.chat_backend.service.RoomService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.security.Principal;
+
+@RestController
+@RequestMapping("/api/rooms")
+@CrossOrigin(origins = "*")
+public class RoomController {
+
+    private final RoomService roomService;
+    private final ChatHistoryService chatHistoryService;
+
+    public RoomController(RoomService roomService, ChatHistoryService chatHistoryService) {
+        this.roomService = roomService;
+        this.chatHistoryService = chatHistoryService;
+    }
+
+    // Create a room; the caller becomes its owner and first member
+    @PostMapping
+    public ResponseEntity<?> createRoom(@RequestBody RoomCreateDTO request, Principal principal) {
+        try {
+            RoomDTO room = roomService.createRoom(principal.getName(), request);
+            return ResponseEntity.status(HttpStatus.CREATED).body(room); // ✅ 201 Created
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(e.getMessage()); // ❌ 400 Bad Request
+        }
+    }
+
+    // Rooms the caller is a member of
+    @GetMapping
+    public ResponseEntity<?> getRooms(Principal principal) {
+        return ResponseEntity.ok(roomService.getRooms(principal.getName()));
+    }
+
+    @PostMapping("/{roomId}/members")
+    public ResponseEntity<?> addMember(@PathVariable Long roomId, @RequestParam String email, Principal principal) {
+        try {
+            roomService.addMember(principal.getName(), roomId, email);
+            return ResponseEntity.noContent().build();
+        } catch (SecurityException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // Leave a room (own email) or, as its owner, remove someone
+    @DeleteMapping("/{roomId}/members/{email}")
+    public ResponseEntity<?> removeMember(@PathVariable Long roomId, @PathVariable String email, Principal principal) {
+        try {
+            roomService.removeMember(principal.getName(), roomId, email);
+            return ResponseEntity.noContent().build();
+        } catch (SecurityException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // Room history, newest first, same cursor scheme as /api/messages/history
+    @GetMapping("/{roomId}/history")
+    public ResponseEntity<?> getHistory(
+            @PathVariable Long roomId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit,
+            Principal principal) {
+        try {
+            ConversationPageDTO page = chatHistoryService.getRoomPage(principal.getName(), roomId, cursor, limit);
+            return ResponseEntity.ok(page);
+        } catch (SecurityException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.chatify.chat_backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConversationPageDTO {
+    private List<Message> messages; // Newest first
+    private String nextCursor;      // null when there are no older messages
+}
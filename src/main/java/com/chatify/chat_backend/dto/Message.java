@@ -6,8 +6,11 @@ import java.time.LocalDateTime;
 
 @Data
 public class Message {
+    private Long id; // Set when queued for persistence on PostgreSQL, and on messages read back from history
+    private String clientMessageId; // Optional, chosen by the client to make resends idempotent
     private String senderEmail;
-    private String recipientEmail;
+    private String recipientEmail; // null for group messages
+    private Long roomId;           // Set on group messages only
     private String content;
     private LocalDateTime timestamp;
 }
@@ -0,0 +1,19 @@
+package com.chatify.chat_backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReceiptDTO {
+
+    public enum Type { DELIVERED, READ }
+
+    private String peerEmail;   // Sent by a client: the sender being acknowledged. Received: who acknowledged
+    private Type type;
+    private LocalDateTime upTo; // Cumulative: covers every message timestamped at or before this
+}
@@ -0,0 +1,15 @@
+package com.chatify.chat_backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RoomCreateDTO {
+    private String name;
+    private List<String> memberEmails; // The creator is always added
+}
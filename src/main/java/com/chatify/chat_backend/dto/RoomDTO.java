@@ -0,0 +1,15 @@
+package com.chatify.chat_backend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RoomDTO {
+    private Long id;
+    private String name;
+    private String ownerEmail;
+    private String topic; // Subscribe here for the room's messages, e.g. /topic/rooms/42
+}
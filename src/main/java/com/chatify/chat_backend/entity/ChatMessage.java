@@ -1,5 +1,6 @@
 package com.chatify.chat_backend.entity;
 
+import com.chatify.chat_backend.util.SequenceIdAllocator;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -10,7 +11,26 @@ import org.hibernate.annotations.CreationTimestamp;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "chat_messages")
+@Table(name = "chat_messages", uniqueConstraints = {
+        // A resent message (same sender, same client id) is stored only once
+        @UniqueConstraint(name = "uk_chat_messages_client_message_id",
+                columnNames = {"sender_id", "client_message_id"})
+}, indexes = {
+        // Keyset pagination over one conversation: (low, high) equality + (timestamp, id) order
+        @Index(name = "idx_chat_messages_conversation",
+                columnList = "participant_low_id, participant_high_id, timestamp, id"),
+        // Offline replay: undelivered messages of one recipient, oldest first
+        @Index(name = "idx_chat_messages_undelivered",
+                columnList = "receiver_id, delivered, timestamp, id"),
+        // Keyset pagination over one group room
+        @Index(name = "idx_chat_messages_room",
+                columnList = "room_id, timestamp, id"),
+        // Export: everything a user sent and received, paged on (timestamp, id)
+        @Index(name = "idx_chat_messages_sender",
+                columnList = "sender_id, timestamp, id"),
+        @Index(name = "idx_chat_messages_receiver",
+                columnList = "receiver_id, timestamp, id")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -18,20 +38,44 @@ import java.time.LocalDateTime;
 public class ChatMessage {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "chat_messages_seq")
+    @SequenceGenerator(name = "chat_messages_seq", sequenceName = "chat_messages_seq",
+            allocationSize = SequenceIdAllocator.ALLOCATION_SIZE)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "sender_id", nullable = false)
     private User sender;
 
+    // Exactly one of receiver (1:1 message) and room (group message) is set.
+    // A group message is stored once, whatever the number of members.
     @ManyToOne(fetch = FetchType.LAZY)
-    @JoinColumn(name = "receiver_id", nullable = false)
+    @JoinColumn(name = "receiver_id")
     private User receiver;
 
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "room_id")
+    private ChatRoom room;
+
+    // Canonical conversation key: smaller and larger of the two user ids,
+    // so both directions of a 1:1 chat live in one index range
+    @Column(name = "participant_low_id")
+    private Long participantLowId;
+
+    @Column(name = "participant_high_id")
+    private Long participantHighId;
+
+    @Column(name = "client_message_id", length = 64)
+    private String clientMessageId;
+
     @Column(nullable = false, columnDefinition = "TEXT")
     private String content;
 
+    // False while the recipient was offline and has not had the message replayed yet.
+    // Existing rows default to delivered.
+    @Column(nullable = false, columnDefinition = "boolean default true")
+    private boolean delivered = true;
+
     @CreationTimestamp
     @Column(updatable = false)
     private LocalDateTime timestamp;
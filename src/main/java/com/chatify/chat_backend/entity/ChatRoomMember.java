@@ -0,0 +1,38 @@
+package com.chatify.chat_backend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "chat_room_members", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_chat_room_members_room_user", columnNames = {"room_id", "user_id"})
+}, indexes = {
+        // "Rooms of a user"; the unique constraint already covers lookups by room
+        @Index(name = "idx_chat_room_members_user", columnList = "user_id")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatRoomMember {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "room_id", nullable = false)
+    private ChatRoom room;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    @CreationTimestamp
+    @Column(updatable = false)
+    private LocalDateTime joinedAt;
+}
@@ -0,0 +1,35 @@
+package com.chatify.chat_backend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A chat node of a cluster sharing this database (app.cluster.transport=jdbc).
+ * Written by JdbcCluster only.
+ */
+@Entity
+@Table(name = "cluster_nodes")
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ClusterNode {
+    @Id
+    @Column(name = "node_id", length = 64)
+    private String nodeId;
+
+    // Base URL other nodes forward to, null until the web server has started
+    @Column(name = "address")
+    private String address;
+
+    // Write-behind watermark, null while nothing is known to be written
+    @Column(name = "persisted_through")
+    private LocalDateTime persistedThrough;
+
+    // A node whose heartbeat is older than app.cluster.node-timeout-ms is gone
+    @Column(name = "heartbeat_at", nullable = false)
+    private LocalDateTime heartbeatAt;
+}
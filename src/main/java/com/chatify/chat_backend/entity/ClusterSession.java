@@ -0,0 +1,39 @@
+package com.chatify.chat_backend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * The user has at least one WebSocket session on the node. One row per (user, node),
+ * not per connection; written by JdbcCluster only.
+ */
+@Entity
+@Table(name = "cluster_sessions", indexes = {
+        // Dropping everything of a node that is gone
+        @Index(name = "idx_cluster_sessions_node", columnList = "node_id")
+})
+@IdClass(ClusterSession.Key.class)
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ClusterSession {
+    @Id
+    @Column(name = "email")
+    private String email;
+
+    @Id
+    @Column(name = "node_id", length = 64)
+    private String nodeId;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Key implements Serializable {
+        private String email;
+        private String nodeId;
+    }
+}
@@ -0,0 +1,42 @@
+package com.chatify.chat_backend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * How far a user has received and read the messages a peer sent them.
+ * One row per (user, peer) instead of per-message flags; written in batches by ReceiptService.
+ */
+@Entity
+@Table(name = "conversation_receipts", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_conversation_receipts_user_peer", columnNames = {"user_id", "peer_id"})
+})
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ConversationReceipt {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // The recipient acknowledging messages
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    // The other participant, sender of the acknowledged messages
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "peer_id", nullable = false)
+    private User peer;
+
+    // Every message from peer timestamped at or before this was delivered / read
+    @Column(name = "delivered_up_to")
+    private LocalDateTime deliveredUpTo;
+
+    @Column(name = "read_up_to")
+    private LocalDateTime readUpTo;
+}
@@ -1,5 +1,6 @@
 package com.chatify.chat_backend.entity;
 
+import com.chatify.chat_backend.util.SequenceIdAllocator;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -8,17 +9,23 @@ import lombok.NoArgsConstructor;
 import java.time.Instant;
 
 @Entity
-@Table(name = "refresh_tokens")
+@Table(name = "refresh_tokens", indexes = {
+        // Used by the expiry sweep in RefreshTokenService
+        @Index(name = "idx_refresh_tokens_expiry", columnList = "expiry_date")
+})
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
 public class RefreshToken {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "refresh_tokens_seq")
+    @SequenceGenerator(name = "refresh_tokens_seq", sequenceName = "refresh_tokens_seq",
+            allocationSize = SequenceIdAllocator.ALLOCATION_SIZE)
     private Long id;
 
-    @Column(nullable = false , unique = true)
-    private String token;
+    // SHA-256 of the token, the token itself is only known to the client
+    @Column(name = "token", nullable = false, unique = true)
+    private String tokenHash;
 
     @OneToOne
     @JoinColumn(name = "user_id", referencedColumnName = "id")
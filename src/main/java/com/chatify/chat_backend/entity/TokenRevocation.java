@@ -0,0 +1,28 @@
+package com.chatify.chat_backend.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The last "revoke every access token" of a user, shared by all nodes on this database.
+ * Written and read by TokenRevocationRegistry only.
+ */
+@Entity
+@Table(name = "token_revocations", indexes = {
+        // Used by the poll and the expiry sweep in TokenRevocationRegistry
+        @Index(name = "idx_token_revocations_revoked_before", columnList = "revoked_before")
+})
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TokenRevocation {
+    @Id
+    @Column(name = "email")
+    private String email;
+
+    // Epoch millis, tokens issued up to this instant are revoked
+    @Column(name = "revoked_before", nullable = false)
+    private long revokedBefore;
+}
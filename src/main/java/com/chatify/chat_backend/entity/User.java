@@ -1,5 +1,6 @@
 package com.chatify.chat_backend.entity;
 
+import com.chatify.chat_backend.util.SequenceIdAllocator;
 import jakarta.persistence.*;
 import lombok.*;
 import org.hibernate.annotations.CreationTimestamp;
@@ -13,8 +14,11 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 public class User {
 
+    // Pooled sequence: one round trip reserves a block of ids, so inserts can be batched
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_seq")
+    @SequenceGenerator(name = "users_seq", sequenceName = "users_seq",
+            allocationSize = SequenceIdAllocator.ALLOCATION_SIZE)
     private Long id;
 
     @Column(nullable = false, unique = true)
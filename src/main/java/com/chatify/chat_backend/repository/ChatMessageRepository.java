@@ -2,8 +2,13 @@ package com.chatify.chat_backend.repository;
 
 import com.chatify.chat_backend.entity.ChatMessage;
 import com.chatify.chat_backend.entity.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
@@ -19,4 +24,61 @@ public interface ChatMessageRepository extends JpaRepository<ChatMessage,Long> {
             User sender1, User receiver1,
             User sender2, User receiver2
     );
+
+    // Latest page of a conversation, newest first (served by idx_chat_messages_conversation)
+    @Query("""
+            SELECT m FROM ChatMessage m
+            WHERE m.participantLowId = :lowId AND m.participantHighId = :highId
+            ORDER BY m.timestamp DESC, m.id DESC
+            """)
+    List<ChatMessage> findLatestInConversation(
+            @Param("lowId") Long lowId,
+            @Param("highId") Long highId,
+            Pageable pageable
+    );
+
+    // Next page of a conversation: everything strictly older than the (timestamp, id) cursor.
+    // The plain timestamp bound lets Postgres skip newer partitions (see MessagePartitionService).
+    @Query("""
+            SELECT m FROM ChatMessage m
+            WHERE m.participantLowId = :lowId AND m.participantHighId = :highId
+              AND m.timestamp <= :timestamp
+              AND (m.timestamp < :timestamp OR (m.timestamp = :timestamp AND m.id < :id))
+            ORDER BY m.timestamp DESC, m.id DESC
+            """)
+    List<ChatMessage> findInConversationBefore(
+            @Param("lowId") Long lowId,
+            @Param("highId") Long highId,
+            @Param("timestamp") LocalDateTime timestamp,
+            @Param("id") Long id,
+            Pageable pageable
+    );
+
+    // Latest page of a group room, newest first (served by idx_chat_messages_room)
+    @Query("""
+            SELECT m FROM ChatMessage m
+            JOIN FETCH m.sender
+            WHERE m.room.id = :roomId
+            ORDER BY m.timestamp DESC, m.id DESC
+            """)
+    List<ChatMessage> findLatestInRoom(
+            @Param("roomId") Long roomId,
+            Pageable pageable
+    );
+
+    // Next page of a group room: everything strictly older than the (timestamp, id) cursor
+    @Query("""
+            SELECT m FROM ChatMessage m
+            JOIN FETCH m.sender
+            WHERE m.room.id = :roomId
+              AND m.timestamp <= :timestamp
+              AND (m.timestamp < :timestamp OR (m.timestamp = :timestamp AND m.id < :id))
+            ORDER BY m.timestamp DESC, m.id DESC
+            """)
+    List<ChatMessage> findInRoomBefore(
+            @Param("roomId") Long roomId,
+            @Param("timestamp") LocalDateTime timestamp,
+            @Param("id") Long id,
+            Pageable pageable
+    );
 }
@@ -0,0 +1,15 @@
+package com.chatify.chat_backend.repository;
+
+import com.chatify.chat_backend.entity.ChatRoomMember;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ChatRoomMemberRepository extends JpaRepository<ChatRoomMember, Long> {
+
+    boolean existsByRoomIdAndUserEmail(Long roomId, String email);
+
+    long countByRoomId(Long roomId);
+
+    long deleteByRoomIdAndUserEmail(Long roomId, String email);
+}
@@ -0,0 +1,23 @@
+package com.chatify.chat_backend.repository;
+
+import com.chatify.chat_backend.entity.ChatRoom;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ChatRoomRepository extends JpaRepository<ChatRoom, Long> {
+
+    // Rooms a user belongs to, with the owner loaded for the DTO
+    @Query("""
+            SELECT r FROM ChatRoomMember m
+            JOIN m.room r
+            JOIN FETCH r.owner
+            WHERE m.user.email = :email
+            ORDER BY r.id
+            """)
+    List<ChatRoom> findByMemberEmail(@Param("email") String email);
+}
@@ -2,8 +2,14 @@ package com.chatify.chat_backend.repository;
 
 import com.chatify.chat_backend.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -14,11 +20,20 @@ public interface UserRepository extends JpaRepository<User,Long> {
 
     Optional<User> findByUsername(String username);
 
+    // For ROOMS: load all members of a new room in one query
+    List<User> findAllByEmailIn(Collection<String> emails);
+
     // For REGISTRATION: Check if email is already taken (efficient exists check)
     Boolean existsByEmail(String email);
 
     // For REGISTRATION: Check if username is already taken (if username must be unique)
     Boolean existsByUsername(String username);
 
+    // For LOGIN: store a password re-hashed with the current BCrypt cost factor
+    @Modifying
+    @Transactional
+    @Query("UPDATE User u SET u.password = :password WHERE u.id = :id")
+    int updatePassword(@Param("id") Long id, @Param("password") String password);
+
 }
 
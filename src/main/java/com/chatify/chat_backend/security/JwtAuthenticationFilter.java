@@ -2,11 +2,14 @@
 
 package com.chatify.chat_backend.security;
 
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
@@ -14,17 +17,30 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.List;
 
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtUtil jwtUtil;
     private final CustomUserDetailsService userDetailsService;
+    private final TokenRevocationRegistry revocationRegistry;
+
+    /**
+     * When true, the principal is built from the token claims (subject + roles)
+     * instead of loading the user from the database on every request.
+     */
+    @Value("${app.security.stateless-principal:false}")
+    private boolean statelessPrincipal;
 
     // ✅ Best Practice: Constructor Injection
-    public JwtAuthenticationFilter(JwtUtil jwtUtil, CustomUserDetailsService userDetailsService) {
+    public JwtAuthenticationFilter(
+            JwtUtil jwtUtil,
+            CustomUserDetailsService userDetailsService,
+            TokenRevocationRegistry revocationRegistry) {
         this.jwtUtil = jwtUtil;
         this.userDetailsService = userDetailsService;
+        this.revocationRegistry = revocationRegistry;
     }
 
     /**
@@ -40,10 +56,13 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             String jwt = parseJwt(request);
 
             if (jwt != null) {
-                // ✅ Extract email once and validate
-                String email = jwtUtil.extractUsername(jwt);  // This returns email now
-                if (email != null && jwtUtil.isTokenValid(jwt, email)) {
-                    UserDetails userDetails = userDetailsService.loadUserByUsername(email);
+                // ✅ Verify signature + expiry once and read the email from the claims
+                Claims claims = jwtUtil.validateAndGetClaims(jwt);
+                String email = claims != null ? claims.getSubject() : null;  // Subject is the email
+                if (email != null && !revocationRegistry.isRevoked(email, claims)) {
+                    UserDetails userDetails = statelessPrincipal
+                            ? userDetailsFromClaims(claims)
+                            : userDetailsService.loadUserByUsername(email);
 
                     UsernamePasswordAuthenticationToken authentication =
                             new UsernamePasswordAuthenticationToken(
@@ -63,6 +82,22 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         filterChain.doFilter(request, response);
     }
 
+    /**
+     * Build the principal from validated claims, the signature proves them.
+     * Tokens issued before roles were embedded fall back to the database.
+     */
+    private UserDetails userDetailsFromClaims(Claims claims) {
+        List<String> roles = jwtUtil.extractRoles(claims);
+        if (roles == null) {
+            return userDetailsService.loadUserByUsername(claims.getSubject());
+        }
+        return new org.springframework.security.core.userdetails.User(
+                claims.getSubject(),
+                "", // no credentials for token-based principals
+                roles.stream().map(SimpleGrantedAuthority::new).toList()
+        );
+    }
+
     /**
      * Extract JWT token from Authorization header
      *
@@ -1,23 +1,48 @@
 package com.chatify.chat_backend.security;
 
+import com.chatify.chat_backend.entity.User;
+import com.chatify.chat_backend.util.ExpiringCache;
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 @Component
 public class JwtUtil {
 
+    /** Claim holding the database id of the user. */
+    public static final String CLAIM_USER_ID = "uid";
+
+    /** Claim holding the granted authorities, e.g. ["ROLE_USER"]. */
+    public static final String CLAIM_ROLES = "roles";
+
+    /** Claim holding the issue time in epoch milliseconds, iat only has seconds. */
+    public static final String CLAIM_ISSUED_AT_MS = "iat_ms";
+
+    /** Every account currently has the same role, see CustomUserDetailsService. */
+    private static final List<String> DEFAULT_ROLES = List.of("ROLE_USER");
+
     /**
      * Base64-encoded secret string. Set this in application.yml as:
      * jwt.secret: ${JWT_SECRET}
@@ -35,12 +60,60 @@ public class JwtUtil {
     @Value("${jwt.expiration-ms:3600000}") // default to 1 hour if not set
     private long tokenLifetimeMs;
 
+    /**
+     * Maximum number of verified tokens kept in memory.
+     * Entries are keyed by the SHA-256 digest of the token and expire with the token.
+     * 0 disables the cache: every token is parsed and its signature verified.
+     */
+    @Value("${jwt.verified-cache.max-size:10000}")
+    private int verifiedCacheMaxSize;
+
     /**
      * The signing key object derived from the Base64 secret.
      * Built once after properties are injected.
      */
     private Key signingKey;
 
+    /**
+     * Thread-safe parser bound to signingKey, reused for every verification.
+     */
+    private JwtParser jwtParser;
+
+    /**
+     * Claims of tokens whose signature was already verified, null when the cache is disabled.
+     */
+    private ExpiringCache<String, Claims> verifiedTokens;
+
+    private final Timer validTokens;
+    private final Timer invalidTokens;
+    private final Timer expiredTokens;
+    private final Counter cacheHits;
+    private final Counter cacheMisses;
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    });
+
+    public JwtUtil(MeterRegistry meterRegistry) {
+        // Same timer, tagged by outcome, so failures show up both as rate and as latency
+        this.validTokens = validationTimer(meterRegistry, "valid");
+        this.invalidTokens = validationTimer(meterRegistry, "invalid");
+        this.expiredTokens = validationTimer(meterRegistry, "expired");
+        this.cacheHits = meterRegistry.counter("jwt.verified-cache.requests", "result", "hit");
+        this.cacheMisses = meterRegistry.counter("jwt.verified-cache.requests", "result", "miss");
+    }
+
+    private static Timer validationTimer(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder("jwt.validation")
+                .description("Signature and expiry check of an access token")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
     /**
      * Initialize signingKey after Spring injects properties.
      * Decodes the Base64 string and creates a proper HMAC key.
@@ -50,6 +123,10 @@ public class JwtUtil {
     public void initializeSigningKey() {
         byte[] keyBytes = Decoders.BASE64.decode(base64Secret);
         this.signingKey = Keys.hmacShaKeyFor(keyBytes);
+        this.jwtParser = Jwts.parserBuilder()
+                .setSigningKey(signingKey)
+                .build();
+        this.verifiedTokens = verifiedCacheMaxSize > 0 ? new ExpiringCache<>(verifiedCacheMaxSize) : null;
     }
 
     /**
@@ -61,6 +138,19 @@ public class JwtUtil {
         return generateToken(Map.of(), username);
     }
 
+    /**
+     * Generate a JWT for a user, embedding the user id and roles so the
+     * principal can be rebuilt from the token alone (see JwtAuthenticationFilter).
+     * @param user the authenticated user, email is used as subject
+     * @return signed JWT as compact string
+     */
+    public String generateToken(User user) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(CLAIM_USER_ID, user.getId());
+        claims.put(CLAIM_ROLES, DEFAULT_ROLES);
+        return generateToken(claims, user.getEmail());
+    }
+
     /**
      * Generate a JWT with custom claims and subject.
      * @param extraClaims additional key/value pairs to include in token body
@@ -71,6 +161,7 @@ public class JwtUtil {
         long now = System.currentTimeMillis();
         return Jwts.builder()
                 .setClaims(extraClaims)
+                .claim(CLAIM_ISSUED_AT_MS, now)
                 .setSubject(subject)
                 .setIssuedAt(new Date(now))
                 .setExpiration(new Date(now + tokenLifetimeMs))
@@ -89,18 +180,64 @@ public class JwtUtil {
 
 
     /**
-     * Validate token by checking signature and expiration only.
+     * Issue time with millisecond precision, for comparing against revocations.
+     * @param claims validated claims
+     * @return epoch millis, or null if the token has no issue time. Tokens from before
+     *         the iat_ms claim only have seconds; they count as issued at the start of
+     *         that second, so a token from the second of a revocation is revoked.
+     */
+    public static Long issuedAtMillis(Claims claims) {
+        if (claims.get(CLAIM_ISSUED_AT_MS) instanceof Number millis) {
+            return millis.longValue();
+        }
+        Date issuedAt = claims.getIssuedAt();
+        return issuedAt == null ? null : issuedAt.getTime();
+    }
+
+    /**
+     * Read the roles embedded by generateToken(User).
+     * @param claims validated claims
+     * @return role names, or null if the token was issued without roles
+     */
+    public List<String> extractRoles(Claims claims) {
+        Object roles = claims.get(CLAIM_ROLES);
+        if (!(roles instanceof List<?> list)) {
+            return null;
+        }
+        return list.stream().map(String::valueOf).toList();
+    }
+
+    /**
+     * Verify signature and expiration in a single pass and return the claims.
+     * Use this instead of extractUsername + isTokenValid on hot paths.
      * @param token JWT string
-     * @return true if valid and not expired
+     * @return validated claims, or null if the token is invalid or expired
      */
-    public boolean validateToken(String token) {
+    public Claims validateAndGetClaims(String token) {
+        long start = System.nanoTime();
         try {
-            return !isTokenExpired(token);
+            Claims claims = parseClaims(token);
+            if (isExpired(claims)) {
+                expiredTokens.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                return null;
+            }
+            validTokens.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return claims;
         } catch (JwtException | IllegalArgumentException ex) {
-            return false;
+            invalidTokens.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return null;
         }
     }
 
+    /**
+     * Validate token by checking signature and expiration only.
+     * @param token JWT string
+     * @return true if valid and not expired
+     */
+    public boolean validateToken(String token) {
+        return validateAndGetClaims(token) != null;
+    }
+
     /**
      * Validate token by checking signature, expiration, and matching subject.
      * @param token        JWT string
@@ -108,22 +245,18 @@ public class JwtUtil {
      * @return true if valid and not expired
      */
     public boolean isTokenValid(String token, String expectedUser) {
-        try {
-            final String username = extractUsername(token);
-            return username.equals(expectedUser) && !isTokenExpired(token);
-        } catch (JwtException | IllegalArgumentException ex) {
-            // signature invalid, malformed, or other parsing error
-            return false;
-        }
+        // null when the signature is invalid, the token is malformed or expired
+        Claims claims = validateAndGetClaims(token);
+        return claims != null && claims.getSubject().equals(expectedUser);
     }
 
 
 
     /** ----------- Internal helpers ----------- */
 
-    private boolean isTokenExpired(String token) {
-        Date expiration = extractClaim(token, Claims::getExpiration);
-        return expiration.before(new Date());
+    private boolean isExpired(Claims claims) {
+        Date expiration = claims.getExpiration();
+        return expiration != null && expiration.before(new Date());
     }
 
     private <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
@@ -133,12 +266,37 @@ public class JwtUtil {
 
     /**
      * Parse token and return all claims. Throws JwtException if signature is invalid.
+     * Tokens verified before are served from verifiedTokens until they expire.
      */
     private Claims parseClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(signingKey)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        if (token == null || token.isBlank()) {
+            throw new IllegalArgumentException("JWT token is empty");
+        }
+
+        if (verifiedTokens == null) {
+            return jwtParser.parseClaimsJws(token).getBody();
+        }
+
+        String cacheKey = digest(token);
+        Claims cached = verifiedTokens.get(cacheKey);
+        if (cached != null) {
+            cacheHits.increment();
+            return cached;
+        }
+        cacheMisses.increment();
+
+        Claims claims = jwtParser.parseClaimsJws(token).getBody();
+        Date expiration = claims.getExpiration();
+        if (expiration != null) {
+            verifiedTokens.put(cacheKey, claims, expiration.getTime() - System.currentTimeMillis());
+        }
+        return claims;
+    }
+
+    private String digest(String token) {
+        MessageDigest sha256 = SHA_256.get();
+        sha256.reset();
+        byte[] hash = sha256.digest(token.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(hash);
     }
 }
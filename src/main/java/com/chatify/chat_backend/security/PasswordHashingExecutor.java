@@ -0,0 +1,106 @@
+package com.chatify.chat_backend.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Dedicated, bounded pool for BCrypt work.
+ *
+ * A fixed number of threads (default: half the CPUs) caps how much CPU password
+ * hashing can take from the messaging endpoints, and a bounded queue provides
+ * admission control: once queue-capacity requests are waiting, new ones fail
+ * immediately with RejectedExecutionException instead of piling up.
+ *
+ * What follows a check (database writes, token signing) runs on a separate
+ * completion pool, so hashing threads only ever hash.
+ */
+@Component
+public class PasswordHashingExecutor {
+
+    private static final int CPUS = Runtime.getRuntime().availableProcessors();
+
+    /** Hashing threads, 0 = half the CPUs. */
+    @Value("${app.auth.bcrypt.threads:0}")
+    private int threads;
+
+    @Value("${app.auth.bcrypt.queue-capacity:100}")
+    private int queueCapacity;
+
+    /** Threads finishing logins after the check; they mostly wait on the database. */
+    @Value("${app.auth.login.completion-threads:8}")
+    private int completionThreads;
+
+    private final MeterRegistry meterRegistry;
+
+    private ThreadPoolExecutor executor;
+    private ThreadPoolExecutor completionExecutor;
+    private Counter rejected;
+
+    public PasswordHashingExecutor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        int poolSize = threads > 0 ? threads : Math.max(1, CPUS / 2);
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> new Thread(runnable, "password-hashing-" + threadCount.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+
+        // Fed by the hashing pool only, so never more than queue-capacity + threads tasks at once
+        AtomicInteger completionThreadCount = new AtomicInteger();
+        completionExecutor = new ThreadPoolExecutor(completionThreads, completionThreads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> new Thread(runnable, "login-completion-" + completionThreadCount.incrementAndGet()));
+
+        Gauge.builder("auth.bcrypt.queue.size", executor, pool -> pool.getQueue().size())
+                .description("Password checks waiting for a hashing thread")
+                .register(meterRegistry);
+        Gauge.builder("auth.bcrypt.active", executor, ThreadPoolExecutor::getActiveCount)
+                .register(meterRegistry);
+        rejected = meterRegistry.counter("auth.bcrypt.rejected");
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdown();
+        completionExecutor.shutdown();
+    }
+
+    /**
+     * @return the pool for the work that follows a hashing task, e.g. as thenApplyAsync executor
+     */
+    public Executor completionExecutor() {
+        return completionExecutor;
+    }
+
+    /**
+     * Run a hashing task on the pool.
+     * @return a future failed with RejectedExecutionException when the queue is full
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
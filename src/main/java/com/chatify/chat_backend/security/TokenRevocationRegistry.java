@@ -0,0 +1,170 @@
+package com.chatify.chat_backend.security;
+
+import io.jsonwebtoken.Claims;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Record of "tokens issued before this instant are revoked" per email, kept in memory
+ * and checked on every authenticated request without touching the database.
+ *
+ * Revocations are also written to token_revocations so every node sharing the database
+ * honours them: each node loads the live ones at startup and polls for new ones every
+ * poll-interval-ms. A token revoked on one node is therefore still accepted by the others
+ * for up to one poll interval (plus the time the database is unreachable, if it is).
+ *
+ * An entry only has to live as long as the tokens it revokes, so it is dropped one
+ * access token lifetime after the revocation, and never earlier: there is no size
+ * bound that could bring a revoked token back. The map and the table hold at most one
+ * entry per user who logged out within the last token lifetime.
+ *
+ * Properties:
+ *   app.security.revocation.poll-interval-ms  default 1000
+ */
+@Component
+@DependsOn("entityManagerFactory") // token_revocations must exist
+public class TokenRevocationRegistry {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenRevocationRegistry.class);
+
+    // Each poll looks this far behind the previous one, for revocations that were
+    // written just before it but committed after it, or by a node with a slower clock
+    private static final long POLL_OVERLAP_MS = 10_000;
+
+    private static final String UPDATE_SQL =
+            "UPDATE token_revocations SET revoked_before = ? WHERE email = ? AND revoked_before < ?";
+    private static final String INSERT_SQL = "INSERT INTO token_revocations (email, revoked_before) VALUES (?, ?)";
+    private static final String SINCE_SQL =
+            "SELECT email, revoked_before FROM token_revocations WHERE revoked_before >= ?";
+    private static final String DELETE_EXPIRED_SQL = "DELETE FROM token_revocations WHERE revoked_before < ?";
+
+    @Value("${jwt.expiration-ms:3600000}")
+    private long tokenLifetimeMs;
+
+    @Value("${app.security.revocation.poll-interval-ms:1000}")
+    private long pollIntervalMs;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // email -> epoch millis of the last revocation
+    private final ConcurrentHashMap<String, Long> revokedBefore = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweepAt = new AtomicLong();
+    // Start of the last successful poll, only touched by the poll thread after startup
+    private long polledAt;
+
+    private ScheduledExecutorService scheduler;
+
+    public TokenRevocationRegistry(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void initialize() {
+        long now = System.currentTimeMillis();
+        nextSweepAt.set(now + tokenLifetimeMs);
+        load(now - tokenLifetimeMs);
+        polledAt = now;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "token-revocation-poll");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::poll, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Revoke every access token issued to this email up to now, on this node at once
+     * and on the others within one poll interval.
+     */
+    public void revokeAll(String email) {
+        long now = System.currentTimeMillis();
+        revokedBefore.merge(email, now, Math::max);
+        store(email, now);
+        sweepExpired(now);
+    }
+
+    /**
+     * @param email  token subject
+     * @param claims validated token claims
+     * @return true if the token was issued before the user's last revocation, or
+     *         carries no issue time at all
+     */
+    public boolean isRevoked(String email, Claims claims) {
+        Long cutoff = revokedBefore.get(email);
+        if (cutoff == null || isExpired(cutoff, System.currentTimeMillis())) {
+            return false;
+        }
+        Long issuedAt = JwtUtil.issuedAtMillis(claims);
+        return issuedAt == null || issuedAt <= cutoff;
+    }
+
+    private void store(String email, long cutoff) {
+        if (jdbcTemplate.update(UPDATE_SQL, cutoff, email, cutoff) > 0) {
+            return;
+        }
+        try {
+            jdbcTemplate.update(INSERT_SQL, email, cutoff);
+        } catch (DuplicateKeyException e) {
+            // Already there, either later than ours or inserted concurrently
+            jdbcTemplate.update(UPDATE_SQL, cutoff, email, cutoff);
+        }
+    }
+
+    private void poll() {
+        long now = System.currentTimeMillis();
+        try {
+            load(polledAt - POLL_OVERLAP_MS);
+            polledAt = now;
+        } catch (DataAccessException e) {
+            // Picked up by the next poll, which still starts from the last good one
+            log.warn("Could not poll token revocations", e);
+        }
+    }
+
+    private void load(long since) {
+        List<Map.Entry<String, Long>> rows = jdbcTemplate.query(SINCE_SQL,
+                (rs, rowNum) -> Map.entry(rs.getString("email"), rs.getLong("revoked_before")), since);
+        for (Map.Entry<String, Long> row : rows) {
+            revokedBefore.merge(row.getKey(), row.getValue(), Math::max);
+        }
+    }
+
+    /**
+     * Drops the entries whose tokens have all expired, at most once per token lifetime,
+     * so the map stays bounded by the number of users revoking within one lifetime.
+     */
+    private void sweepExpired(long now) {
+        long due = nextSweepAt.get();
+        if (now < due || !nextSweepAt.compareAndSet(due, now + tokenLifetimeMs)) {
+            return;
+        }
+        revokedBefore.values().removeIf(cutoff -> isExpired(cutoff, now));
+        jdbcTemplate.update(DELETE_EXPIRED_SQL, now - tokenLifetimeMs);
+    }
+
+    private boolean isExpired(long cutoff, long now) {
+        return now - cutoff > tokenLifetimeMs;
+    }
+}
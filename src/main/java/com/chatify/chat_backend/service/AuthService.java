@@ -4,45 +4,61 @@ package com.chatify.chat_backend.service;
 import com.chatify.chat_backend.dto.UserLoginDTO;
 import com.chatify.chat_backend.dto.UserRegistrationDTO;
 import com.chatify.chat_backend.dto.AuthResponseDTO;
-import com.chatify.chat_backend.entity.RefreshToken;
 import com.chatify.chat_backend.entity.User;
-import com.chatify.chat_backend.repository.RefreshTokenRepository;
 import com.chatify.chat_backend.repository.UserRepository;
 import com.chatify.chat_backend.security.JwtUtil;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.authentication.AuthenticationManager;
-import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
-import org.springframework.security.core.AuthenticationException;
+import com.chatify.chat_backend.security.PasswordHashingExecutor;
+import com.chatify.chat_backend.security.TokenRevocationRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.time.Instant;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 public class AuthService {
 
+    private static final Logger log = LoggerFactory.getLogger(AuthService.class);
+
     private final UserRepository userRepository;
-    private final RefreshTokenRepository refreshTokenRepository;
+    private final RefreshTokenService refreshTokenService;
     private final PasswordEncoder passwordEncoder;
     private final JwtUtil jwtUtil;
-    private final AuthenticationManager authenticationManager;
+    private final UserService userService;
+    private final TokenRevocationRegistry tokenRevocationRegistry;
+    private final PasswordHashingExecutor passwordHashing;
+    private final MeterRegistry meterRegistry;
 
-    @Value("${app.jwt.refresh-token.expiration-ms}")
-    private long refreshTokenExpirationMs;
+    // Checked against when the email is unknown, so both cases take one BCrypt run
+    private final String unknownUserHash;
 
     public AuthService(
             UserRepository userRepository,
-            RefreshTokenRepository refreshTokenRepository,
+            RefreshTokenService refreshTokenService,
             PasswordEncoder passwordEncoder,
             JwtUtil jwtUtil,
-            AuthenticationManager authenticationManager) {
+            UserService userService,
+            TokenRevocationRegistry tokenRevocationRegistry,
+            PasswordHashingExecutor passwordHashing,
+            MeterRegistry meterRegistry) {
         this.userRepository = userRepository;
-        this.refreshTokenRepository = refreshTokenRepository;
+        this.refreshTokenService = refreshTokenService;
         this.passwordEncoder = passwordEncoder;
         this.jwtUtil = jwtUtil;
-        this.authenticationManager = authenticationManager;
+        this.userService = userService;
+        this.tokenRevocationRegistry = tokenRevocationRegistry;
+        this.passwordHashing = passwordHashing;
+        this.meterRegistry = meterRegistry;
+        this.unknownUserHash = passwordEncoder.encode(UUID.randomUUID().toString());
     }
 
     @Transactional
@@ -58,61 +74,94 @@ public class AuthService {
         user.setEmail(request.getEmail());
         user.setPassword(passwordEncoder.encode(request.getPassword()));
         userRepository.save(user);
+        // Forget a cached "unknown email" so messages to the new user are accepted right away.
+        // Only after commit: a lookup before that would still read "not found" and cache it again
+        String email = user.getEmail();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                userService.invalidateEmail(email);
+            }
+        });
         return "User registered successfully";
     }
 
-    public AuthResponseDTO login(UserLoginDTO request) {
-        String email = request.getEmail();
+    /**
+     * Check credentials with a single user lookup and BCrypt on the password hashing pool,
+     * so the calling servlet thread is not held during the hash. Storing an upgraded hash
+     * and issuing the tokens run on the pool's completion executor, leaving the hashing
+     * threads free for the next check.
+     * @return completes with the tokens, or fails with BadCredentialsException, or with
+     *         RejectedExecutionException when too many logins are already waiting
+     */
+    public CompletableFuture<AuthResponseDTO> login(UserLoginDTO request) {
         String password = request.getPassword();
+        Timer.Sample sample = Timer.start(meterRegistry);
+
+        CompletableFuture<AuthResponseDTO> result;
         try {
-            User user = userRepository.findByEmail(email)
-                    .orElseThrow(() -> new RuntimeException("Invalid email or password"));
-            authenticationManager.authenticate(new UsernamePasswordAuthenticationToken(email, password));
-            String accessToken = jwtUtil.generateToken(user.getEmail());
-            String refreshToken = generateRefreshToken(user);
-            return new AuthResponseDTO(accessToken, refreshToken, user.getUsername(),user.getEmail());
-        } catch (AuthenticationException e) {
-            throw new RuntimeException("Invalid email or password", e);
+            Optional<User> found = userRepository.findByEmail(request.getEmail());
+            String hash = found.map(User::getPassword).orElse(unknownUserHash);
+
+            // Both BCrypt runs, the check and a possible re-hash, stay on the hashing pool
+            result = passwordHashing.submit(() -> {
+                        if (password == null || !passwordEncoder.matches(password, hash) || found.isEmpty()) {
+                            throw new BadCredentialsException("Invalid email or password");
+                        }
+                        return upgradedHash(hash, password);
+                    })
+                    .thenApplyAsync(upgradedHash -> {
+                        User user = found.get();
+                        if (upgradedHash != null) {
+                            userRepository.updatePassword(user.getId(), upgradedHash);
+                            user.setPassword(upgradedHash);
+                        }
+                        String accessToken = jwtUtil.generateToken(user);
+                        String refreshToken = refreshTokenService.issue(user);
+                        return new AuthResponseDTO(accessToken, refreshToken, user.getUsername(), user.getEmail());
+                    }, passwordHashing.completionExecutor());
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
         }
-    }
 
-    private String generateRefreshToken(User user) {
-        refreshTokenRepository.deleteAllByUser(user);
-        RefreshToken refreshToken = new RefreshToken();
-        refreshToken.setUser(user);
-        refreshToken.setToken(UUID.randomUUID().toString());
-        refreshToken.setExpiryDate(Instant.now().plusMillis(refreshTokenExpirationMs));
-        refreshTokenRepository.save(refreshToken);
-        return refreshToken.getToken();
+        // Includes the queue wait and the BCrypt check, which is also timed alone as auth.bcrypt
+        return result.whenComplete((response, error) ->
+                sample.stop(meterRegistry.timer("auth.login", "outcome", error == null ? "success" : "failure")));
     }
 
-    @Transactional
-    public AuthResponseDTO refreshToken(String requestRefreshToken) {
-        return refreshTokenRepository.findByToken(requestRefreshToken)
-                .map(this::verifyExpiration)
-                .map(refreshToken -> {
-                    User user = refreshToken.getUser();
-                    refreshTokenRepository.delete(refreshToken);
-                    String accessToken = jwtUtil.generateToken(user.getEmail()); // Changed from user.getUsername()
-                    String newRefreshToken = generateRefreshToken(user);
-                    return new AuthResponseDTO(accessToken, newRefreshToken, user.getUsername(), user.getEmail());
-                })
-                .orElseThrow(() -> new RuntimeException("Refresh token not found"));
+    /**
+     * Re-hash with the current cost factor (app.auth.bcrypt.strength) after a successful
+     * login if the stored hash was made with a lower one; higher costs are kept.
+     * Runs on the hashing pool.
+     * @return the new hash to store, or null if the stored one is kept
+     */
+    private String upgradedHash(String storedHash, String password) {
+        if (!passwordEncoder.upgradeEncoding(storedHash)) {
+            return null;
+        }
+        return passwordEncoder.encode(password);
     }
 
-    private RefreshToken verifyExpiration(RefreshToken token) {
-        if (token.getExpiryDate().compareTo(Instant.now()) < 0) {
-            refreshTokenRepository.delete(token);
-            throw new RuntimeException("Refresh token expired");
+    /**
+     * Exchange a refresh token for new tokens. Each refresh token works once.
+     */
+    public AuthResponseDTO refreshToken(String requestRefreshToken) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "failure";
+        try {
+            RefreshTokenService.Rotation rotation = refreshTokenService.rotate(requestRefreshToken);
+            User user = rotation.user();
+            String accessToken = jwtUtil.generateToken(user); // Subject is user.getEmail()
+            outcome = "success";
+            return new AuthResponseDTO(accessToken, rotation.refreshToken(), user.getUsername(), user.getEmail());
+        } finally {
+            sample.stop(meterRegistry.timer("auth.refresh", "outcome", outcome));
         }
-        return token;
     }
 
-    @Transactional
     public void logout(String email) {
-        userRepository.findByUsername(email).ifPresent(user -> {
-            int deletedCount = refreshTokenRepository.deleteAllByUser(user);
-            System.out.println("Deleted " + deletedCount + " refresh tokens for user: " + email);
-        });
+        // Access tokens stay valid until they expire unless revoked here
+        tokenRevocationRegistry.revokeAll(email);
+        refreshTokenService.revokeAll(email);
     }
-}
\ No newline at end of file
+}
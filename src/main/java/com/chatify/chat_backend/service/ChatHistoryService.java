@@ -0,0 +1,195 @@
+package com.chatify.chat_backend.service;
+
+import com.chatify.chat_backend.dto.ConversationPageDTO;
+import com.chatify.chat_backend.dto.Message;
+import com.chatify.chat_backend.entity.ChatMessage;
+import com.chatify.chat_backend.entity.User;
+import com.chatify.chat_backend.repository.ChatMessageRepository;
+import com.chatify.chat_backend.repository.UserRepository;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Conversation history with keyset (cursor) pagination on (timestamp, id).
+ * Every page costs one index range scan of at most limit + 1 rows, no matter
+ * how long the conversation is. The latest page of a recently opened conversation
+ * comes from RecentMessageCache without a database query.
+ */
+@Service
+public class ChatHistoryService {
+
+    public static final int MAX_PAGE_SIZE = 100;
+
+    private final ChatMessageRepository chatMessageRepository;
+    private final UserRepository userRepository;
+    private final RoomService roomService;
+    private final RecentMessageCache recentMessages;
+
+    public ChatHistoryService(
+            ChatMessageRepository chatMessageRepository,
+            UserRepository userRepository,
+            RoomService roomService,
+            RecentMessageCache recentMessages) {
+        this.chatMessageRepository = chatMessageRepository;
+        this.userRepository = userRepository;
+        this.roomService = roomService;
+        this.recentMessages = recentMessages;
+    }
+
+    /**
+     * @param userEmail the authenticated user
+     * @param peerEmail the other participant
+     * @param cursor    nextCursor of the previous page, or null for the latest page
+     * @param limit     page size, capped at MAX_PAGE_SIZE
+     */
+    // Not @Transactional: a cache hit must not take a connection, each query runs on its own
+    public ConversationPageDTO getConversationPage(String userEmail, String peerEmail, String cursor, int limit) {
+        int pageSize = pageSize(limit);
+        boolean latest = cursor == null || cursor.isBlank();
+        boolean cacheable = latest && pageSize <= recentMessages.maxPageSize();
+        if (cacheable) {
+            List<Message> cached = recentMessages.getLatest(userEmail, peerEmail, pageSize);
+            if (cached != null) {
+                return page(cached, pageSize);
+            }
+        }
+
+        User user = userRepository.findByEmail(userEmail)
+                .orElseThrow(() -> new RuntimeException("User not found: " + userEmail));
+        User peer = userRepository.findByEmail(peerEmail)
+                .orElseThrow(() -> new RuntimeException("User not found: " + peerEmail));
+
+        long lowId = Math.min(user.getId(), peer.getId());
+        long highId = Math.max(user.getId(), peer.getId());
+
+        List<ChatMessage> rows;
+        if (cacheable) {
+            // Read as much as the cache holds, so the conversation can be cached from it
+            recentMessages.beginLoad(userEmail, peerEmail);
+            try {
+                rows = chatMessageRepository.findLatestInConversation(
+                        lowId, highId, PageRequest.of(0, recentMessages.maxPageSize() + 1));
+            } catch (RuntimeException e) {
+                recentMessages.abortLoad(userEmail, peerEmail);
+                throw e;
+            }
+        } else if (latest) {
+            // Fetch one extra row to find out whether an older page exists
+            rows = chatMessageRepository.findLatestInConversation(lowId, highId, PageRequest.of(0, pageSize + 1));
+        } else {
+            Cursor position = Cursor.decode(cursor);
+            rows = chatMessageRepository.findInConversationBefore(
+                    lowId, highId, position.timestamp(), position.id(), PageRequest.of(0, pageSize + 1));
+        }
+
+        List<Message> messages = new ArrayList<>(rows.size());
+        for (ChatMessage row : rows) {
+            // getId() on the lazy sender proxy does not hit the database
+            boolean sentByUser = row.getSender().getId().equals(user.getId());
+            Message message = toMessage(row);
+            message.setSenderEmail(sentByUser ? user.getEmail() : peer.getEmail());
+            message.setRecipientEmail(sentByUser ? peer.getEmail() : user.getEmail());
+            messages.add(message);
+        }
+        if (cacheable) {
+            recentMessages.populate(userEmail, peerEmail, messages);
+        }
+        return page(messages, pageSize);
+    }
+
+    /**
+     * @param messages newest first, up to pageSize + 1; the extra one only tells that an older page exists
+     */
+    private static ConversationPageDTO page(List<Message> messages, int pageSize) {
+        if (messages.size() <= pageSize) {
+            return new ConversationPageDTO(messages, null);
+        }
+        Message last = messages.get(pageSize - 1);
+        String nextCursor = new Cursor(last.getTimestamp(), last.getId()).encode();
+        return new ConversationPageDTO(new ArrayList<>(messages.subList(0, pageSize)), nextCursor);
+    }
+
+    /**
+     * Same as getConversationPage, for a group room the user is a member of.
+     */
+    @Transactional(readOnly = true)
+    public ConversationPageDTO getRoomPage(String userEmail, Long roomId, String cursor, int limit) {
+        if (!roomService.isMember(roomId, userEmail)) {
+            throw new SecurityException("Not a member of room " + roomId);
+        }
+        int pageSize = pageSize(limit);
+
+        PageRequest page = PageRequest.of(0, pageSize + 1);
+        List<ChatMessage> rows;
+        if (cursor == null || cursor.isBlank()) {
+            rows = chatMessageRepository.findLatestInRoom(roomId, page);
+        } else {
+            Cursor position = Cursor.decode(cursor);
+            rows = chatMessageRepository.findInRoomBefore(roomId, position.timestamp(), position.id(), page);
+        }
+
+        List<ChatMessage> pageRows = rows.subList(0, Math.min(rows.size(), pageSize));
+        List<Message> messages = new ArrayList<>(pageRows.size());
+        for (ChatMessage row : pageRows) {
+            Message message = toMessage(row);
+            message.setSenderEmail(row.getSender().getEmail()); // Fetched with the page
+            message.setRoomId(roomId);
+            messages.add(message);
+        }
+        return new ConversationPageDTO(messages, nextCursor(rows, pageSize));
+    }
+
+    private static int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
+    private static Message toMessage(ChatMessage row) {
+        Message message = new Message();
+        message.setId(row.getId());
+        message.setClientMessageId(row.getClientMessageId());
+        message.setContent(row.getContent());
+        message.setTimestamp(row.getTimestamp());
+        return message;
+    }
+
+    /**
+     * @param rows up to pageSize + 1 rows, the extra one only tells that an older page exists
+     */
+    private static String nextCursor(List<ChatMessage> rows, int pageSize) {
+        if (rows.size() <= pageSize) {
+            return null;
+        }
+        ChatMessage last = rows.get(pageSize - 1);
+        return new Cursor(last.getTimestamp(), last.getId()).encode();
+    }
+
+    /**
+     * Opaque position in a conversation: the (timestamp, id) of the last message returned.
+     */
+    record Cursor(LocalDateTime timestamp, Long id) {
+
+        String encode() {
+            String raw = timestamp + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static Cursor decode(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int separator = raw.lastIndexOf('|');
+                return new Cursor(
+                        LocalDateTime.parse(raw.substring(0, separator)),
+                        Long.parseLong(raw.substring(separator + 1)));
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Invalid cursor", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.chatify.chat_backend.service;
+
+import com.chatify.chat_backend.util.Databases;
+import com.chatify.chat_backend.util.SequenceIdAllocator;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Map;
+
+/**
+ * Moves users, refresh_tokens and chat_messages from IDENTITY columns to the pooled
+ * sequences the entities now use, at startup and idempotently:
+ * the sequence is created with app.db.id-allocation-size as increment, the identity
+ * is replaced by a nextval() default, and the sequence is moved past the largest
+ * existing id. It is never moved backwards, so running it on a live cluster is safe.
+ *
+ * Hibernate is configured to take the increment from the database
+ * (increment_size_mismatch_strategy=fix), so the allocation size can be raised
+ * through the property. Lowering it would let running nodes hand out overlapping
+ * blocks; that needs a manual ALTER SEQUENCE with every node stopped.
+ *
+ * Only runs on PostgreSQL. On other databases (the embedded H2 node of ChatLoadTest)
+ * Hibernate creates the sequences itself and nothing needs to move. The id columns
+ * then have no nextval() default, so JDBC inserts always name the id: from a
+ * SequenceIdAllocator, or nextval() in the statement.
+ *
+ * A new sequence is moved to the increment as well, so its first block is
+ * (0, increment] and never hands out ids below 1.
+ */
+@Service
+@DependsOn("entityManagerFactory") // The tables must exist
+public class IdSequenceService {
+
+    private static final Logger log = LoggerFactory.getLogger(IdSequenceService.class);
+
+    // table -> sequence, the sequenceName of each entity's @SequenceGenerator
+    private static final Map<String, String> SEQUENCES = Map.of(
+            "users", "users_seq",
+            "refresh_tokens", "refresh_tokens_seq",
+            "chat_messages", "chat_messages_seq");
+
+    private static final String SEQUENCE_STATE_SQL = """
+            SELECT s.increment_by, CASE WHEN s.last_value IS NULL THEN s.start_value ELSE s.last_value + s.increment_by END AS next_value
+            FROM pg_sequences s WHERE s.sequencename = ?
+            """;
+
+    @Value("${app.db.id-allocation-size:50}")
+    private int allocationSize;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction;
+
+    public IdSequenceService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void migrate() {
+        if (!Databases.isPostgres(jdbcTemplate)) {
+            log.info("Not running on PostgreSQL, id sequence migration skipped");
+            return;
+        }
+        if (allocationSize < SequenceIdAllocator.ALLOCATION_SIZE) {
+            log.warn("app.db.id-allocation-size {} is below the entity allocation size, using {}",
+                    allocationSize, SequenceIdAllocator.ALLOCATION_SIZE);
+            allocationSize = SequenceIdAllocator.ALLOCATION_SIZE;
+        }
+        SEQUENCES.forEach((table, sequence) -> transaction.executeWithoutResult(status -> migrate(table, sequence)));
+    }
+
+    private void migrate(String table, String sequence) {
+        // Blocks inserts for the few statements below, so no id is taken in between
+        jdbcTemplate.execute("LOCK TABLE " + table + " IN SHARE ROW EXCLUSIVE MODE");
+        jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS " + sequence + " INCREMENT BY " + allocationSize);
+
+        long configured = sequenceState(sequence).increment();
+        if (allocationSize > configured) {
+            jdbcTemplate.execute("ALTER SEQUENCE " + sequence + " INCREMENT BY " + allocationSize);
+            log.info("Raised the increment of {} from {} to {}", sequence, configured, allocationSize);
+        } else if (allocationSize < configured) {
+            log.warn("{} increments by {}, app.db.id-allocation-size {} is ignored", sequence, configured, allocationSize);
+        }
+
+        jdbcTemplate.execute("ALTER TABLE " + table + " ALTER COLUMN id DROP IDENTITY IF EXISTS");
+        jdbcTemplate.execute("ALTER TABLE " + table + " ALTER COLUMN id SET DEFAULT nextval('" + sequence + "')");
+        jdbcTemplate.execute("ALTER SEQUENCE " + sequence + " OWNED BY " + table + ".id");
+
+        // The first block after the move, (next - increment, next], must start above every existing id
+        SequenceState current = sequenceState(sequence);
+        long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM " + table, Long.class);
+        long increment = current.increment();
+        if (current.nextValue() < maxId + increment) {
+            jdbcTemplate.queryForObject("SELECT setval(CAST(? AS regclass), ?, false)", Long.class, sequence, maxId + increment);
+            log.info("Moved {} past the existing ids of {} (max id {})", sequence, table, maxId);
+        }
+    }
+
+    private SequenceState sequenceState(String sequence) {
+        return jdbcTemplate.queryForObject(SEQUENCE_STATE_SQL, (rs, rowNum) ->
+                new SequenceState(rs.getLong("increment_by"), rs.getLong("next_value")), sequence);
+    }
+
+    /**
+     * @param nextValue what the next nextval() call returns
+     */
+    private record SequenceState(long increment, long nextValue) {
+    }
+}
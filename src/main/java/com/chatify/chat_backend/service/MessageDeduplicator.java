@@ -0,0 +1,60 @@
+package com.chatify.chat_backend.service;
+
+import com.chatify.chat_backend.dto.Message;
+import com.chatify.chat_backend.util.ExpiringCache;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Remembers recently accepted client message ids, so a message resent after a
+ * reconnect is neither delivered nor queued for persistence a second time.
+ *
+ * Only covers this node and the last window-ms; the insert in
+ * MessagePersistenceService and the unique constraint on chat_messages keep the
+ * history free of duplicates beyond that.
+ */
+@Service
+public class MessageDeduplicator {
+
+    /** Maximum client message ids remembered at once. */
+    @Value("${app.chat.dedupe.max-size:100000}")
+    private int maxSize;
+
+    /** How long a client message id is remembered; should cover a client's resend window. */
+    @Value("${app.chat.dedupe.window-ms:300000}")
+    private long windowMs;
+
+    private ExpiringCache<String, Boolean> seen;
+
+    @PostConstruct
+    public void initialize() {
+        seen = new ExpiringCache<>(maxSize);
+    }
+
+    /**
+     * Record the message's client id.
+     * @return false if the same sender already sent this client id within the window;
+     *         true for a new id or a message without one
+     */
+    public boolean markFirstSeen(Message message) {
+        if (message.getClientMessageId() == null) {
+            return true;
+        }
+        return seen.putIfAbsent(key(message), Boolean.TRUE, windowMs);
+    }
+
+    /**
+     * Forget a client id whose message was not accepted after all, so a retry goes through.
+     */
+    public void forget(Message message) {
+        if (message.getClientMessageId() != null) {
+            seen.invalidate(key(message));
+        }
+    }
+
+    // Ids are only unique per client, so scope them by sender
+    private static String key(Message message) {
+        return message.getSenderEmail() + '\n' + message.getClientMessageId();
+    }
+}
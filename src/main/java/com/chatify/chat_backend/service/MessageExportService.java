@@ -0,0 +1,129 @@
+package com.chatify.chat_backend.service;
+
+import com.chatify.chat_backend.dto.Message;
+import com.chatify.chat_backend.entity.User;
+import com.chatify.chat_backend.repository.UserRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Streams every message a user sent or received, including those of their rooms, as NDJSON (one JSON object per line).
+ * The export is read in keyset pages on (timestamp, id), one short query per page
+ * outside any transaction, and each page is written out after its connection went
+ * back to the pool. A slow client therefore never holds a connection or a snapshot,
+ * and memory stays flat however long the history is.
+ */
+@Service
+public class MessageExportService {
+
+    // Each branch is an ordered range scan of at most one page:
+    // idx_chat_messages_sender, idx_chat_messages_receiver and, per room, idx_chat_messages_room.
+    // UNION drops the overlap (own room messages, messages to oneself).
+    private static final String EXPORT_PAGE_SQL = """
+            SELECT page.id, s.email AS sender_email, r.email AS receiver_email, page.room_id, page.content, page.timestamp
+            FROM (
+                (SELECT m.id, m.sender_id, m.receiver_id, m.room_id, m.content, m.timestamp
+                 FROM chat_messages m
+                 WHERE m.sender_id = ? AND (m.timestamp, m.id) > (?, ?)
+                 ORDER BY m.timestamp, m.id LIMIT ?)
+                UNION
+                (SELECT m.id, m.sender_id, m.receiver_id, m.room_id, m.content, m.timestamp
+                 FROM chat_messages m
+                 WHERE m.receiver_id = ? AND (m.timestamp, m.id) > (?, ?)
+                 ORDER BY m.timestamp, m.id LIMIT ?)
+                UNION
+                (SELECT rp.id, rp.sender_id, rp.receiver_id, rp.room_id, rp.content, rp.timestamp
+                 FROM chat_room_members rm
+                 CROSS JOIN LATERAL (
+                     SELECT m.id, m.sender_id, m.receiver_id, m.room_id, m.content, m.timestamp
+                     FROM chat_messages m
+                     WHERE m.room_id = rm.room_id AND (m.timestamp, m.id) > (?, ?)
+                     ORDER BY m.timestamp, m.id LIMIT ?) rp
+                 WHERE rm.user_id = ?)
+            ) page
+            JOIN users s ON s.id = page.sender_id
+            LEFT JOIN users r ON r.id = page.receiver_id
+            ORDER BY page.timestamp, page.id
+            LIMIT ?
+            """;
+
+    // Position before the first message
+    private static final Timestamp START = Timestamp.valueOf("0001-01-01 00:00:00");
+
+    private static final byte[] NEWLINE = {'\n'};
+
+    /** Messages read per query. */
+    @Value("${app.chat.export.page-size:1000}")
+    private int pageSize;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final UserRepository userRepository;
+
+    public MessageExportService(
+            JdbcTemplate jdbcTemplate,
+            ObjectMapper objectMapper,
+            UserRepository userRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.userRepository = userRepository;
+    }
+
+    /**
+     * Resolve the user before the response starts, so an unknown user is still a 400.
+     * @return the id to pass to exportMessages
+     */
+    public long userId(String email) {
+        return userRepository.findByEmail(email)
+                .map(User::getId)
+                .orElseThrow(() -> new RuntimeException("User not found: " + email));
+    }
+
+    /**
+     * Write all messages of a user to out, oldest first.
+     * @param userId the user whose messages are exported, see userId(String)
+     * @param out    response stream, not closed by this method
+     */
+    public void exportMessages(long userId, OutputStream out) throws IOException {
+        Timestamp afterTimestamp = START;
+        long afterId = Long.MIN_VALUE;
+        while (true) {
+            List<Message> page = jdbcTemplate.query(EXPORT_PAGE_SQL, (rs, rowNum) -> toMessage(rs),
+                    userId, afterTimestamp, afterId, pageSize,
+                    userId, afterTimestamp, afterId, pageSize,
+                    afterTimestamp, afterId, pageSize, userId,
+                    pageSize);
+            for (Message message : page) {
+                out.write(objectMapper.writeValueAsBytes(message));
+                out.write(NEWLINE);
+            }
+            out.flush();
+            if (page.size() < pageSize) {
+                return;
+            }
+            Message last = page.get(page.size() - 1);
+            afterTimestamp = Timestamp.valueOf(last.getTimestamp());
+            afterId = last.getId();
+        }
+    }
+
+    private static Message toMessage(ResultSet rs) throws SQLException {
+        Message message = new Message();
+        message.setId(rs.getLong("id"));
+        message.setSenderEmail(rs.getString("sender_email"));
+        message.setRecipientEmail(rs.getString("receiver_email"));
+        message.setRoomId(rs.getObject("room_id", Long.class));
+        message.setContent(rs.getString("content"));
+        message.setTimestamp(rs.getTimestamp("timestamp").toLocalDateTime());
+        return message;
+    }
+}
@@ -0,0 +1,429 @@
+package com.chatify.chat_backend.service;
+
+import com.chatify.chat_backend.util.Databases;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Monthly range partitioning of chat_messages on timestamp (opt-in).
+ *
+ * On the first start with app.chat.partitioning.enabled=true the existing table is
+ * renamed to chat_messages_legacy and attached to a new partitioned chat_messages as
+ * the partition for everything before next month, so no rows are copied. From then on
+ * one partition per month (chat_messages_pYYYY_MM) is created ahead of time, at startup
+ * and on every rollover run. History queries filter and sort on timestamp, so Postgres
+ * only reads the newest partitions for a recent page. There is no DEFAULT partition,
+ * so inserts fail once the premade months run out: chat.partitions.coverage.days
+ * reports how far ahead partitions exist, and every rollover logs an error while that
+ * is below min-coverage-days.
+ *
+ * The monthly partitions have no foreign keys, LIKE does not copy them, and their
+ * primary key and (sender_id, client_message_id) unique constraint hold per partition
+ * only: Postgres requires the partition key in a unique index on the parent. The
+ * NOT EXISTS check of MessagePersistenceService still dedupes resends across months.
+ *
+ * Partitions older than cold-after-months, chat_messages_legacy included, can be moved
+ * to cold-tablespace, e.g. on cheaper or compressed storage. A partition is copied into
+ * a new table in the cold tablespace while reads and writes continue; a trigger records
+ * the ids written meanwhile. The swap then blocks writes to that partition only while
+ * those rows are copied again and the tables are exchanged with a short detach/attach.
+ * ALTER TABLE ... SET TABLESPACE would lock it for the whole copy. Moving needs the
+ * partition's size in free space on the cold tablespace meanwhile.
+ *
+ * Conversion, rollover and moves run under a Postgres advisory lock, so with several
+ * nodes only one of them changes the partitions at a time.
+ *
+ * Properties:
+ *   app.chat.partitioning.enabled              default false
+ *   app.chat.partitioning.premake-months       default 2, months created ahead of now
+ *   app.chat.partitioning.rollover-interval-ms default 1 day
+ *   app.chat.partitioning.cold-tablespace      default empty = no cold tier
+ *   app.chat.partitioning.cold-after-months    default 6
+ *   app.chat.partitioning.min-coverage-days    default 14
+ * Other databases than PostgreSQL keep the plain table.
+ */
+@Service
+@DependsOn({"entityManagerFactory", "idSequenceService"}) // Table and id sequence must exist
+public class MessagePartitionService {
+
+    private static final Logger log = LoggerFactory.getLogger(MessagePartitionService.class);
+
+    private static final String TABLE = "chat_messages";
+    private static final String LEGACY_TABLE = "chat_messages_legacy";
+    private static final String PARTITION_PREFIX = "chat_messages_p";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    private static final String RELKIND_SQL = "SELECT relkind FROM pg_class WHERE relname = ? AND relkind IN ('r', 'p')";
+
+    private static final String PARTITIONS_SQL = """
+            SELECT c.relname, COALESCE(t.spcname, '') AS tablespace
+            FROM pg_inherits i
+            JOIN pg_class c ON c.oid = i.inhrelid
+            JOIN pg_class p ON p.oid = i.inhparent
+            LEFT JOIN pg_tablespace t ON t.oid = c.reltablespace
+            WHERE p.relname = ? AND c.relname LIKE 'chat_messages\\_p%'
+            ORDER BY c.relname
+            """;
+
+    private static final String TABLESPACE_SQL = """
+            SELECT COALESCE(t.spcname, '') FROM pg_class c
+            LEFT JOIN pg_tablespace t ON t.oid = c.reltablespace
+            WHERE c.relname = ? AND c.relispartition
+            """;
+
+    // Generated columns (content_tsv) are computed again by the copy
+    private static final String COPIED_COLUMNS_SQL = """
+            SELECT attname FROM pg_attribute
+            WHERE attrelid = CAST(? AS regclass) AND attnum > 0 AND NOT attisdropped AND attgenerated = ''
+            ORDER BY attnum
+            """;
+
+    private static final String COLD_COPY_SUFFIX = "_cold";
+    private static final String CHANGES_SUFFIX = "_changes";
+
+    private static final String LOCK_SQL = "SELECT pg_advisory_lock(hashtext('chat_messages_partitioning'))";
+    private static final String TRY_LOCK_SQL = "SELECT pg_try_advisory_lock(hashtext('chat_messages_partitioning'))";
+    private static final String UNLOCK_SQL = "SELECT pg_advisory_unlock(hashtext('chat_messages_partitioning'))";
+
+    // Records the id of every row written to a partition being moved, in the table named by the argument
+    private static final String TRACK_CHANGES_FUNCTION_SQL = """
+            CREATE OR REPLACE FUNCTION chat_messages_track_move() RETURNS trigger AS $$
+            BEGIN
+                EXECUTE format('INSERT INTO %I (id) VALUES ($1)', TG_ARGV[0])
+                    USING CASE TG_OP WHEN 'DELETE' THEN OLD.id ELSE NEW.id END;
+                RETURN NULL;
+            END
+            $$ LANGUAGE plpgsql
+            """;
+
+    // Same column lists as the @Index definitions on ChatMessage
+    private static final List<String> PARENT_INDEXES = List.of(
+            "CREATE INDEX idx_chat_messages_conversation ON chat_messages (participant_low_id, participant_high_id, timestamp, id)",
+            "CREATE INDEX idx_chat_messages_undelivered ON chat_messages (receiver_id, delivered, timestamp, id)",
+            "CREATE INDEX idx_chat_messages_room ON chat_messages (room_id, timestamp, id)",
+            "CREATE INDEX idx_chat_messages_sender ON chat_messages (sender_id, timestamp, id)",
+            "CREATE INDEX idx_chat_messages_receiver ON chat_messages (receiver_id, timestamp, id)");
+
+    // Indexes of the old table keep working under their new names
+    private static final List<String> LEGACY_INDEX_SUFFIXES = List.of(
+            "conversation", "undelivered", "room", "sender", "receiver", "content_tsv");
+
+    @Value("${app.chat.partitioning.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.chat.partitioning.premake-months:2}")
+    private int premakeMonths;
+
+    @Value("${app.chat.partitioning.rollover-interval-ms:86400000}")
+    private long rolloverIntervalMs;
+
+    @Value("${app.chat.partitioning.cold-tablespace:}")
+    private String coldTablespace;
+
+    @Value("${app.chat.partitioning.cold-after-months:6}")
+    private int coldAfterMonths;
+
+    @Value("${app.chat.partitioning.min-coverage-days:14}")
+    private int minCoverageDays;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction;
+    private final MeterRegistry meterRegistry;
+
+    private ScheduledExecutorService scheduler;
+
+    // First day without a partition, as of the last successful rollover
+    private volatile LocalDate coveredUntil = LocalDate.now();
+
+    public MessagePartitionService(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        if (!Databases.isPostgres(jdbcTemplate)) {
+            log.warn("app.chat.partitioning.enabled needs PostgreSQL, {} stays a plain table", TABLE);
+            return;
+        }
+        if (!coldTablespace.isEmpty() && !coldTablespace.matches("[a-z_][a-z0-9_]*")) {
+            throw new IllegalStateException("Invalid app.chat.partitioning.cold-tablespace: " + coldTablespace);
+        }
+        Gauge.builder("chat.partitions.coverage.days", this,
+                        service -> ChronoUnit.DAYS.between(LocalDate.now(), service.coveredUntil))
+                .description("Days ahead for which chat_messages partitions exist")
+                .register(meterRegistry);
+        // Runs before startup completes, so messages never arrive for a month without a partition.
+        // Nodes starting together wait for each other, the later ones find the work done
+        withAdvisoryLock(true, () -> {
+            List<String> kind = jdbcTemplate.queryForList(RELKIND_SQL, String.class, TABLE);
+            if (kind.isEmpty()) {
+                throw new IllegalStateException("Table " + TABLE + " not found, cannot partition it");
+            }
+            if ("r".equals(kind.get(0))) {
+                convertToPartitioned();
+            }
+            rollover();
+        });
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "message-partition-rollover");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::scheduledRollover, rolloverIntervalMs, rolloverIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * One-time switch from the plain table, in a single transaction. Only catalog changes,
+     * except for the range check while attaching the old table, which reads it once.
+     */
+    private void convertToPartitioned() {
+        YearMonth firstMonth = YearMonth.now().plusMonths(1);
+        log.info("Converting {} to monthly partitions, existing rows stay in {}", TABLE, LEGACY_TABLE);
+
+        transaction.executeWithoutResult(status -> {
+            jdbcTemplate.execute("LOCK TABLE chat_messages IN ACCESS EXCLUSIVE MODE");
+            jdbcTemplate.execute("ALTER TABLE chat_messages RENAME TO " + LEGACY_TABLE);
+            for (String suffix : LEGACY_INDEX_SUFFIXES) {
+                jdbcTemplate.execute("ALTER INDEX IF EXISTS idx_chat_messages_" + suffix
+                        + " RENAME TO idx_chat_messages_legacy_" + suffix);
+            }
+
+            // Copies the nextval('chat_messages_seq') default set up by IdSequenceService
+            jdbcTemplate.execute("CREATE TABLE chat_messages (LIKE " + LEGACY_TABLE
+                    + " INCLUDING DEFAULTS INCLUDING GENERATED) PARTITION BY RANGE (timestamp)");
+            jdbcTemplate.execute("ALTER SEQUENCE chat_messages_seq OWNED BY chat_messages.id");
+            // Created on the empty parent; attaching reuses the matching legacy indexes
+            PARENT_INDEXES.forEach(jdbcTemplate::execute);
+
+            // The partition key cannot be NULL
+            jdbcTemplate.update("UPDATE " + LEGACY_TABLE + " SET timestamp = TIMESTAMP '1970-01-01' WHERE timestamp IS NULL");
+            jdbcTemplate.execute("ALTER TABLE chat_messages ATTACH PARTITION " + LEGACY_TABLE
+                    + " FOR VALUES FROM (MINVALUE) TO ('" + firstMonth.atDay(1) + "')");
+
+            createPartition(firstMonth);
+        });
+    }
+
+    // Another node holding the lock does the same work, this one tries again next interval
+    private void scheduledRollover() {
+        try {
+            if (!withAdvisoryLock(false, this::rollover)) {
+                log.debug("Message partition rollover is running on another node, skipped");
+            }
+        } catch (DataAccessException e) {
+            log.error("Message partition rollover failed, retrying in {} ms", rolloverIntervalMs, e);
+        }
+    }
+
+    /**
+     * Run work while holding the partitioning advisory lock. The lock belongs to the
+     * connection held here for the duration; work itself may use any other connection.
+     * @param wait false to give up at once if another node holds the lock
+     * @return false if the lock was not taken and work did not run
+     */
+    private boolean withAdvisoryLock(boolean wait, Runnable work) {
+        Boolean ran = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+            try (Statement statement = connection.createStatement()) {
+                try (ResultSet rs = statement.executeQuery(wait ? LOCK_SQL : TRY_LOCK_SQL)) {
+                    if (!wait && !(rs.next() && rs.getBoolean(1))) {
+                        return false;
+                    }
+                }
+                try {
+                    work.run();
+                } finally {
+                    statement.executeQuery(UNLOCK_SQL).close();
+                }
+                return true;
+            }
+        });
+        return Boolean.TRUE.equals(ran);
+    }
+
+    /**
+     * Create the partitions for the coming months and move old ones to the cold tablespace.
+     * Callers hold the advisory lock.
+     */
+    void rollover() {
+        try {
+            List<Partition> partitions = partitions();
+            List<String> existing = partitions.stream().map(Partition::name).toList();
+            // Months before the first monthly partition belong to chat_messages_legacy
+            YearMonth from = YearMonth.now();
+            if (!existing.isEmpty()) {
+                YearMonth earliest = monthOf(existing.get(0));
+                if (earliest.isAfter(from)) {
+                    from = earliest;
+                }
+            }
+            YearMonth last = YearMonth.now().plusMonths(premakeMonths);
+            for (YearMonth month = from; !month.isAfter(last); month = month.plusMonths(1)) {
+                if (!existing.contains(partitionName(month))) {
+                    createPartition(month);
+                }
+            }
+            if (!existing.isEmpty() && monthOf(existing.get(existing.size() - 1)).isAfter(last)) {
+                last = monthOf(existing.get(existing.size() - 1));
+            }
+            coveredUntil = last.plusMonths(1).atDay(1);
+            checkCoverage();
+
+            archiveColdPartitions(partitions);
+        } catch (DataAccessException e) {
+            log.error("Message partition rollover failed, retrying in {} ms", rolloverIntervalMs, e);
+        }
+    }
+
+    private void checkCoverage() {
+        long days = ChronoUnit.DAYS.between(LocalDate.now(), coveredUntil);
+        if (days < minCoverageDays) {
+            log.error("Message partitions only exist for the next {} days, inserts fail from {} on",
+                    days, coveredUntil);
+        }
+    }
+
+    /**
+     * Only partitions that are no longer written to qualify, every row of them older
+     * than cold-after-months. chat_messages_legacy ends where the first monthly
+     * partition starts.
+     */
+    private void archiveColdPartitions(List<Partition> partitions) {
+        if (coldTablespace.isEmpty()) {
+            return;
+        }
+        YearMonth coldBefore = YearMonth.now().minusMonths(coldAfterMonths);
+        if (!partitions.isEmpty()) {
+            YearMonth legacyEnd = monthOf(partitions.get(0).name());
+            List<String> legacyTablespace = jdbcTemplate.queryForList(TABLESPACE_SQL, String.class, LEGACY_TABLE);
+            if (!legacyTablespace.isEmpty() && !legacyEnd.isAfter(coldBefore)
+                    && !coldTablespace.equals(legacyTablespace.get(0))) {
+                moveToColdTablespace(LEGACY_TABLE, null, legacyEnd.atDay(1));
+            }
+        }
+        for (Partition partition : partitions) {
+            YearMonth month = monthOf(partition.name());
+            if (month.isBefore(coldBefore) && !coldTablespace.equals(partition.tablespace())) {
+                moveToColdTablespace(partition.name(), month.atDay(1), month.plusMonths(1).atDay(1));
+            }
+        }
+    }
+
+    /**
+     * Copy the partition into a new table in the cold tablespace, then swap the two.
+     * The copy only reads the partition, so history reads and writes go on. Rows written
+     * meanwhile are recorded by a trigger and copied again once writes are blocked; the
+     * swap itself changes catalogs only and gives up after lock-timeout if a long read
+     * holds the partition.
+     * @param start first timestamp of the partition, null for MINVALUE
+     */
+    private void moveToColdTablespace(String partition, LocalDate start, LocalDate end) {
+        String copy = partition + COLD_COPY_SUFFIX;
+        String changes = partition + CHANGES_SUFFIX;
+        String trigger = partition + "_track_move";
+        log.info("Moving {} to tablespace {}", partition, coldTablespace);
+
+        // Left over by an interrupted move, the partition's rows are untouched
+        jdbcTemplate.execute("DROP TRIGGER IF EXISTS " + trigger + " ON " + partition);
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + copy + ", " + changes);
+
+        // Waits for open writes to the partition, every later one fires the trigger
+        jdbcTemplate.execute("CREATE UNLOGGED TABLE " + changes + " (id BIGINT NOT NULL)");
+        jdbcTemplate.execute(TRACK_CHANGES_FUNCTION_SQL);
+        jdbcTemplate.execute("CREATE TRIGGER " + trigger + " AFTER INSERT OR UPDATE OR DELETE ON " + partition
+                + " FOR EACH ROW EXECUTE FUNCTION chat_messages_track_move('" + changes + "')");
+
+        jdbcTemplate.execute("CREATE TABLE " + copy + " (LIKE " + partition + " INCLUDING ALL) TABLESPACE " + coldTablespace);
+        String columns = String.join(", ", jdbcTemplate.queryForList(COPIED_COLUMNS_SQL, String.class, partition));
+        jdbcTemplate.execute("INSERT INTO " + copy + " (" + columns + ") SELECT " + columns + " FROM " + partition);
+
+        // Proves the copy fits the range, so ATTACH skips its validation scan
+        String range = "timestamp IS NOT NULL AND timestamp < '" + end + "'"
+                + (start == null ? "" : " AND timestamp >= '" + start + "'");
+        jdbcTemplate.execute("ALTER TABLE " + copy + " ADD CONSTRAINT " + copy + "_range CHECK (" + range + ")");
+
+        String bounds = "FOR VALUES FROM (" + (start == null ? "MINVALUE" : "'" + start + "'") + ") TO ('" + end + "')";
+        transaction.executeWithoutResult(status -> {
+            jdbcTemplate.execute("SET LOCAL lock_timeout = '5s'");
+            // Reads go on, writes wait until the swap commits
+            jdbcTemplate.execute("LOCK TABLE " + partition + " IN EXCLUSIVE MODE");
+            String changed = "id IN (SELECT id FROM " + changes + ")";
+            jdbcTemplate.execute("DELETE FROM " + copy + " WHERE " + changed);
+            jdbcTemplate.execute("INSERT INTO " + copy + " (" + columns + ") SELECT " + columns
+                    + " FROM " + partition + " WHERE " + changed);
+
+            jdbcTemplate.execute("ALTER TABLE " + TABLE + " DETACH PARTITION " + partition);
+            jdbcTemplate.execute("DROP TABLE " + partition);
+            jdbcTemplate.execute("ALTER TABLE " + copy + " RENAME TO " + partition);
+            jdbcTemplate.execute("ALTER TABLE " + TABLE + " ATTACH PARTITION " + partition + " " + bounds);
+            jdbcTemplate.execute("DROP TABLE " + changes);
+        });
+    }
+
+    /**
+     * @return the monthly partitions, oldest first
+     */
+    private List<Partition> partitions() {
+        return jdbcTemplate.query(PARTITIONS_SQL, (rs, rowNum) ->
+                new Partition(rs.getString("relname"), rs.getString("tablespace")), TABLE);
+    }
+
+    private void createPartition(YearMonth month) {
+        LocalDate start = month.atDay(1);
+        LocalDate end = month.plusMonths(1).atDay(1);
+        // Keys and dedupe are per partition, a unique index on the parent would need timestamp in it
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partitionName(month) + " PARTITION OF chat_messages"
+                + " (PRIMARY KEY (id), UNIQUE (sender_id, client_message_id))"
+                + " FOR VALUES FROM ('" + start + "') TO ('" + end + "')");
+        log.info("Created message partition {}", partitionName(month));
+    }
+
+    private static String partitionName(YearMonth month) {
+        return PARTITION_PREFIX + month.format(PARTITION_SUFFIX);
+    }
+
+    private static YearMonth monthOf(String partitionName) {
+        return YearMonth.parse(partitionName.substring(PARTITION_PREFIX.length()), PARTITION_SUFFIX);
+    }
+
+    private record Partition(String name, String tablespace) {
+    }
+}
@@ -0,0 +1,386 @@
+package com.chatify.chat_backend.service;
+
+import com.chatify.chat_backend.dto.Message;
+import com.chatify.chat_backend.util.Databases;
+import com.chatify.chat_backend.util.SequenceIdAllocator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.stereotype.Service;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind persistence for chat messages.
+ * Messages are put on a bounded in-memory queue by the STOMP handlers and a single
+ * writer thread flushes them to chat_messages with JDBC batch inserts, so message
+ * delivery never waits on a database round trip.
+ */
+@Service
+public class MessagePersistenceService {
+
+    private static final Logger log = LoggerFactory.getLogger(MessagePersistenceService.class);
+
+    // Resolve both user ids in the same statement so the writer never loads User entities.
+    // NOT EXISTS skips resends that got past the in-memory dedupe window (other node, restart);
+    // uk_chat_messages_client_message_id catches the rare concurrent insert.
+    private static final String INSERT_SQL = """
+            INSERT INTO chat_messages (id, sender_id, receiver_id, participant_low_id, participant_high_id,
+                                       client_message_id, content, timestamp, delivered)
+            SELECT COALESCE(?, nextval('chat_messages_seq')), s.id, r.id, LEAST(s.id, r.id), GREATEST(s.id, r.id), ?, ?, ?, ?
+            FROM users s, users r
+            WHERE s.email = ? AND r.email = ?
+              AND NOT EXISTS (SELECT 1 FROM chat_messages m
+                              WHERE m.sender_id = s.id AND m.client_message_id = ?)
+            """;
+
+    // Group messages: stored once per room, members are not resolved here
+    private static final String ROOM_INSERT_SQL = """
+            INSERT INTO chat_messages (id, sender_id, room_id, client_message_id, content, timestamp, delivered)
+            SELECT COALESCE(?, nextval('chat_messages_seq')), s.id, ?, ?, ?, ?, TRUE
+            FROM users s
+            WHERE s.email = ?
+              AND NOT EXISTS (SELECT 1 FROM chat_messages m
+                              WHERE m.sender_id = s.id AND m.client_message_id = ?)
+            """;
+
+    /** Maximum number of messages waiting to be written. */
+    @Value("${app.chat.persistence.queue-capacity:10000}")
+    private int queueCapacity;
+
+    /** A flush is triggered as soon as this many messages are buffered... */
+    @Value("${app.chat.persistence.batch-size:200}")
+    private int batchSize;
+
+    /** ...or when the oldest buffered message has waited this long. */
+    @Value("${app.chat.persistence.flush-interval-ms:50}")
+    private long flushIntervalMs;
+
+    /** How long a sender blocks on a full queue before the message is rejected. */
+    @Value("${app.chat.persistence.offer-timeout-ms:100}")
+    private long offerTimeoutMs;
+
+    /** How long shutdown waits for the queue to drain. */
+    @Value("${app.chat.persistence.shutdown-timeout-ms:10000}")
+    private long shutdownTimeoutMs;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MeterRegistry meterRegistry;
+    private final SequenceIdAllocator idAllocator;
+    private final RecentMessageCache recentMessages;
+
+    // Ids are taken from chat_messages_seq in blocks on PostgreSQL only (pg_sequences)
+    private boolean allocateIds;
+
+    private BlockingQueue<PendingWrite> queue;
+    private Thread writerThread;
+    private volatile boolean running;
+
+    // Every message timestamped at or before this is in the database (or failed)
+    private volatile LocalDateTime persistedThrough = LocalDateTime.MIN;
+
+    // Messages between enqueue() and the end of their flush, oldest first. Each entry is
+    // registered before its message is timestamped, so the oldest one bounds the watermark
+    private final ConcurrentSkipListSet<InFlight> inFlight = new ConcurrentSkipListSet<>();
+    private final AtomicLong inFlightSequence = new AtomicLong();
+
+    private Timer flushTimer;
+    private Counter persistedCounter;
+    private Counter skippedCounter;
+    private Counter failedCounter;
+    private Counter rejectedCounter;
+
+    public MessagePersistenceService(
+            JdbcTemplate jdbcTemplate,
+            RecentMessageCache recentMessages,
+            MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.recentMessages = recentMessages;
+        this.meterRegistry = meterRegistry;
+        this.idAllocator = new SequenceIdAllocator(jdbcTemplate, "chat_messages_seq");
+    }
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        allocateIds = Databases.isPostgres(jdbcTemplate);
+
+        Gauge.builder("chat.persistence.queue.depth", queue, BlockingQueue::size)
+                .description("Chat messages waiting to be written")
+                .register(meterRegistry);
+        flushTimer = Timer.builder("chat.persistence.flush")
+                .description("Time spent writing one batch of chat messages")
+                .register(meterRegistry);
+        persistedCounter = meterRegistry.counter("chat.persistence.messages", "result", "persisted");
+        skippedCounter = meterRegistry.counter("chat.persistence.messages", "result", "skipped");
+        failedCounter = meterRegistry.counter("chat.persistence.messages", "result", "failed");
+        rejectedCounter = meterRegistry.counter("chat.persistence.messages", "result", "rejected");
+
+        running = true;
+        writerThread = new Thread(this::runWriter, "chat-message-writer");
+        writerThread.start();
+    }
+
+    /**
+     * Queue a message for persistence.
+     * Blocks for at most offer-timeout-ms when the queue is full (backpressure).
+     * Sets the message id and timestamp, so the live copy carries the same values as
+     * the stored row.
+     * @param message   message with sender, recipient (or room) and content set
+     * @param delivered false if the recipient was offline, the message is then
+     *                  replayed on their next connect (see OfflineMessageService)
+     * @return false if the message could not be queued and was NOT persisted
+     */
+    public boolean enqueue(Message message, boolean delivered) {
+        if (!running) {
+            rejectedCounter.increment();
+            return false;
+        }
+        InFlight entry = new InFlight(LocalDateTime.now(), inFlightSequence.incrementAndGet());
+        inFlight.add(entry);
+        message.setId(allocateId());
+        // Not before entry.since(), so the watermark stays below it until the row is written
+        message.setTimestamp(LocalDateTime.now());
+        try {
+            if (queue.offer(new PendingWrite(message, delivered, entry), offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        inFlight.remove(entry);
+        rejectedCounter.increment();
+        return false;
+    }
+
+    /**
+     * @return a new id from chat_messages_seq, or null if no block could be fetched or
+     *         the database is not PostgreSQL; the insert then calls nextval() itself
+     */
+    private Long allocateId() {
+        if (!allocateIds) {
+            return null;
+        }
+        try {
+            return idAllocator.next();
+        } catch (DataAccessException | IllegalStateException e) {
+            log.warn("Could not allocate a message id, the database assigns it on insert", e);
+            return null;
+        }
+    }
+
+    /**
+     * @return true once every message timestamped at or before the given time has
+     *         been written, so a read from chat_messages is guaranteed to see it
+     */
+    public boolean isPersistedThrough(LocalDateTime time) {
+        return !persistedThrough.isBefore(time);
+    }
+
+    /**
+     * @return the time up to which every message of this node has been written
+     */
+    public LocalDateTime getPersistedThrough() {
+        return persistedThrough;
+    }
+
+    /**
+     * Stop accepting messages and flush everything still queued.
+     */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        writerThread.interrupt();
+        try {
+            writerThread.join(shutdownTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!queue.isEmpty()) {
+            log.warn("Shutdown timed out, {} chat messages were not persisted", queue.size());
+        }
+    }
+
+    /** ----------- Writer thread ----------- */
+
+    private void runWriter() {
+        List<PendingWrite> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    fillBatch(batch);
+                }
+            } catch (InterruptedException e) {
+                // Woken up by stop(), the loop condition drains whatever is left
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                for (PendingWrite write : batch) {
+                    inFlight.remove(write.inFlight());
+                }
+                batch.clear();
+            }
+            advancePersistedThrough();
+        }
+    }
+
+    /**
+     * Move the watermark to just before the oldest message still in flight, or to now
+     * if there is none. The clock is read first: a sender that registers after the
+     * check timestamps its message after that reading, so the watermark stays below it.
+     */
+    private void advancePersistedThrough() {
+        LocalDateTime now = LocalDateTime.now();
+        // Not first(): a rejected sender may remove the last entry in between
+        Iterator<InFlight> entries = inFlight.iterator();
+        InFlight oldest = entries.hasNext() ? entries.next() : null;
+        LocalDateTime bound = oldest == null || oldest.since().isAfter(now) ? now : oldest.since();
+        // Strictly before: a message may carry exactly that timestamp
+        LocalDateTime watermark = bound.minusNanos(1);
+        if (watermark.isAfter(persistedThrough)) {
+            persistedThrough = watermark;
+        }
+    }
+
+    /**
+     * Keep collecting until the batch is full or flush-interval-ms has passed
+     * since the first message of the batch arrived.
+     */
+    private void fillBatch(List<PendingWrite> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            if (batch.size() >= batchSize || !running) {
+                return;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            PendingWrite next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<PendingWrite> batch) {
+        List<PendingWrite> direct = new ArrayList<>(batch.size());
+        List<PendingWrite> room = new ArrayList<>();
+        for (PendingWrite write : batch) {
+            (write.message().getRoomId() == null ? direct : room).add(write);
+        }
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            flush(INSERT_SQL, direct, this::setInsertParameters);
+            flush(ROOM_INSERT_SQL, room, this::setRoomInsertParameters);
+        } finally {
+            sample.stop(flushTimer);
+        }
+    }
+
+    private void flush(String sql, List<PendingWrite> batch, ParameterizedPreparedStatementSetter<PendingWrite> setter) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            int[][] counts = jdbcTemplate.batchUpdate(sql, batch, batch.size(), setter);
+            for (int i = 0; i < batch.size(); i++) {
+                inserted(batch.get(i), counts[0][i]);
+            }
+        } catch (DataAccessException e) {
+            // A duplicate from another node writing the same resend, or one bad row:
+            // retry one by one so only the rows that really fail are lost
+            log.warn("Batch of {} chat messages failed, retrying one by one", batch.size(), e);
+            flushIndividually(sql, batch, setter);
+        }
+    }
+
+    private void flushIndividually(String sql, List<PendingWrite> batch,
+                                   ParameterizedPreparedStatementSetter<PendingWrite> setter) {
+        for (PendingWrite write : batch) {
+            try {
+                inserted(write, jdbcTemplate.update(sql, ps -> setter.setValues(ps, write)));
+            } catch (DuplicateKeyException e) {
+                // Already stored by the other writer, nothing lost
+                skippedCounter.increment();
+            } catch (DataAccessException e) {
+                failedCounter.increment();
+                log.error("Failed to persist chat message from {}", write.message().getSenderEmail(), e);
+            }
+        }
+    }
+
+    /**
+     * @param rowCount 0 when the INSERT ... SELECT wrote nothing: a resend whose stored
+     *                 copy is an earlier one, or a sender or recipient that does not exist
+     */
+    private void inserted(PendingWrite write, int rowCount) {
+        if (rowCount == 0) {
+            skippedCounter.increment();
+            return;
+        }
+        persistedCounter.increment();
+        recentMessages.append(write.message());
+    }
+
+    private void setInsertParameters(PreparedStatement ps, PendingWrite write) throws SQLException {
+        Message message = write.message();
+        ps.setObject(1, message.getId(), Types.BIGINT);
+        ps.setString(2, message.getClientMessageId());
+        ps.setString(3, message.getContent());
+        ps.setTimestamp(4, Timestamp.valueOf(message.getTimestamp()));
+        ps.setBoolean(5, write.delivered());
+        ps.setString(6, message.getSenderEmail());
+        ps.setString(7, message.getRecipientEmail());
+        ps.setString(8, message.getClientMessageId());
+    }
+
+    private void setRoomInsertParameters(PreparedStatement ps, PendingWrite write) throws SQLException {
+        Message message = write.message();
+        ps.setObject(1, message.getId(), Types.BIGINT);
+        ps.setLong(2, message.getRoomId());
+        ps.setString(3, message.getClientMessageId());
+        ps.setString(4, message.getContent());
+        ps.setTimestamp(5, Timestamp.valueOf(message.getTimestamp()));
+        ps.setString(6, message.getSenderEmail());
+        ps.setString(7, message.getClientMessageId());
+    }
+
+    private record PendingWrite(Message message, boolean delivered, InFlight inFlight) {
+    }
+
+    private record InFlight(LocalDateTime since, long sequence) implements Comparable<InFlight> {
+        @Override
+        public int compareTo(InFlight other) {
+            int bySince = since.compareTo(other.since);
+            return bySince != 0 ? bySince : Long.compare(sequence, other.sequence);
+        }
+    }
+}
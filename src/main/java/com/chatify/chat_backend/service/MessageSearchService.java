@@ -0,0 +1,274 @@
+package com.chatify.chat_backend.service;
+
+import com.chatify.chat_backend.dto.ConversationPageDTO;
+import com.chatify.chat_backend.dto.Message;
+import com.chatify.chat_backend.util.Databases;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Full-text search over the messages of the caller's own conversations.
+ *
+ * chat_messages.content_tsv is a stored generated tsvector column, so Postgres keeps
+ * it up to date on every insert, including the batched inserts of the write-behind
+ * writer, and idx_chat_messages_content_tsv (GIN) indexes it. Both are created at
+ * startup if missing, and search is enabled once the index is valid; on databases
+ * other than PostgreSQL it stays disabled. Writes continue while the index is built,
+ * on a partitioned chat_messages too: there the index of each partition is built on
+ * its own and then attached. Results are newest first and use the
+ * same (timestamp, id) cursor as the history endpoints; each query runs under
+ * statement_timeout so a very common term cannot hold a connection for long.
+ */
+@Service
+public class MessageSearchService {
+
+    private static final Logger log = LoggerFactory.getLogger(MessageSearchService.class);
+
+    private static final String INDEX_NAME = "idx_chat_messages_content_tsv";
+
+    // Adding a stored generated column rewrites chat_messages once, on the first start
+    private static final String ADD_COLUMN_SQL = """
+            ALTER TABLE chat_messages ADD COLUMN IF NOT EXISTS content_tsv tsvector
+            GENERATED ALWAYS AS (to_tsvector('%s', content)) STORED
+            """;
+
+    // A failed CONCURRENTLY build leaves an invalid index behind, which IF NOT EXISTS would keep
+    private static final String INDEX_VALID_SQL = """
+            SELECT i.indisvalid FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid
+            WHERE c.relname = ?
+            """;
+
+    // CONCURRENTLY does not block the message writer while the index is built
+    private static final String CREATE_INDEX_SQL =
+            "CREATE INDEX CONCURRENTLY IF NOT EXISTS " + INDEX_NAME + " ON chat_messages USING GIN (content_tsv)";
+
+    /*
+     * Partitioned chat_messages (see MessagePartitionService) does not support CONCURRENTLY.
+     * ON ONLY creates the parent index without touching the partitions; it is invalid until
+     * an index of every partition is attached, and new partitions get one automatically.
+     */
+    private static final String CREATE_PARENT_INDEX_SQL =
+            "CREATE INDEX IF NOT EXISTS " + INDEX_NAME + " ON ONLY chat_messages USING GIN (content_tsv)";
+
+    private static final String PARTITIONED_SQL = "SELECT COUNT(*) FROM pg_class WHERE relname = 'chat_messages' AND relkind = 'p'";
+
+    // Partitions without an index attached to the parent index yet
+    private static final String UNINDEXED_PARTITIONS_SQL = """
+            SELECT c.relname FROM pg_inherits i
+            JOIN pg_class c ON c.oid = i.inhrelid
+            JOIN pg_class p ON p.oid = i.inhparent
+            WHERE p.relname = 'chat_messages'
+              AND NOT EXISTS (
+                  SELECT 1 FROM pg_index x
+                  JOIN pg_inherits xi ON xi.inhrelid = x.indexrelid
+                  JOIN pg_class pi ON pi.oid = xi.inhparent
+                  WHERE x.indrelid = c.oid AND pi.relname = ?)
+            ORDER BY c.relname
+            """;
+
+    private static final String DROP_INDEX_SQL = "DROP INDEX CONCURRENTLY IF EXISTS ";
+
+    // Name MessagePartitionService gives the index of the table it converted
+    private static final String LEGACY_TABLE = "chat_messages_legacy";
+    private static final String LEGACY_INDEX_NAME = "idx_chat_messages_legacy_content_tsv";
+
+    // Direct messages of the user in both directions, plus the rooms they are a member of
+    private static final String SEARCH_SQL = """
+            SELECT m.id, m.client_message_id, m.content, m.timestamp, m.room_id,
+                   s.email AS sender_email, r.email AS receiver_email
+            FROM chat_messages m
+            JOIN users s ON s.id = m.sender_id
+            LEFT JOIN users r ON r.id = m.receiver_id
+            WHERE m.content_tsv @@ websearch_to_tsquery(CAST(? AS regconfig), ?)
+              AND (m.sender_id = ? OR m.receiver_id = ?
+                   OR m.room_id IN (SELECT rm.room_id FROM chat_room_members rm WHERE rm.user_id = ?))
+              AND (m.timestamp, m.id) < (?, ?)
+            ORDER BY m.timestamp DESC, m.id DESC
+            LIMIT ?
+            """;
+
+    private static final String USER_ID_SQL = "SELECT id FROM users WHERE email = ?";
+
+    /** Text search configuration, e.g. simple (no stemming) or english. */
+    @Value("${app.chat.search.text-config:simple}")
+    private String textConfig;
+
+    /** Upper bound for one search query, on the database side. */
+    @Value("${app.chat.search.timeout-ms:2000}")
+    private long timeoutMs;
+
+    @Value("${app.chat.search.max-query-length:200}")
+    private int maxQueryLength;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MeterRegistry meterRegistry;
+
+    // Set once the index is valid; searches before that fail fast instead of scanning every message
+    private volatile boolean available;
+
+    public MessageSearchService(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Runs after startup on its own thread: building the index on a large table takes
+     * a while and must not delay the application from serving chat traffic.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void createSearchIndex() {
+        if (!textConfig.matches("[a-z_]+")) {
+            log.error("Invalid app.chat.search.text-config '{}', message search disabled", textConfig);
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                if (!Databases.isPostgres(jdbcTemplate)) {
+                    log.info("Message search needs PostgreSQL full-text search, disabled on this database");
+                    return;
+                }
+                jdbcTemplate.execute(ADD_COLUMN_SQL.formatted(textConfig));
+
+                boolean partitioned = jdbcTemplate.queryForObject(PARTITIONED_SQL, Integer.class) > 0;
+                if (partitioned) {
+                    createPartitionedIndex();
+                } else {
+                    if (Boolean.FALSE.equals(indexValid(INDEX_NAME))) {
+                        jdbcTemplate.execute(DROP_INDEX_SQL + INDEX_NAME);
+                    }
+                    jdbcTemplate.execute(CREATE_INDEX_SQL);
+                }
+
+                if (Boolean.TRUE.equals(indexValid(INDEX_NAME))) {
+                    available = true;
+                    log.info("Message search index ready");
+                } else {
+                    log.error("Message search index {} is not valid, message search disabled", INDEX_NAME);
+                }
+            } catch (DataAccessException e) {
+                log.error("Could not create the message search index", e);
+            }
+        }, "search-index-init");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Build the index of each partition concurrently and attach it to the parent index,
+     * which becomes valid with the last one.
+     */
+    private void createPartitionedIndex() {
+        jdbcTemplate.execute(CREATE_PARENT_INDEX_SQL);
+        for (String partition : jdbcTemplate.queryForList(UNINDEXED_PARTITIONS_SQL, String.class, INDEX_NAME)) {
+            String index = LEGACY_TABLE.equals(partition) ? LEGACY_INDEX_NAME : partition + "_content_tsv_idx";
+            if (Boolean.FALSE.equals(indexValid(index))) {
+                jdbcTemplate.execute(DROP_INDEX_SQL + index);
+            }
+            log.info("Building message search index of {}", partition);
+            jdbcTemplate.execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS " + index
+                    + " ON " + partition + " USING GIN (content_tsv)");
+            jdbcTemplate.execute("ALTER INDEX " + INDEX_NAME + " ATTACH PARTITION " + index);
+        }
+    }
+
+    /**
+     * @return pg_index.indisvalid of the index, null if it does not exist
+     */
+    private Boolean indexValid(String index) {
+        List<Boolean> valid = jdbcTemplate.queryForList(INDEX_VALID_SQL, Boolean.class, index);
+        return valid.isEmpty() ? null : valid.get(0);
+    }
+
+    /**
+     * @param userEmail the authenticated user, only their conversations are searched
+     * @param query     search terms; "quoted phrases", OR and -excluded words are supported
+     * @param cursor    nextCursor of the previous page, or null for the newest matches
+     * @param limit     page size, capped at ChatHistoryService.MAX_PAGE_SIZE
+     */
+    @Transactional(readOnly = true)
+    public ConversationPageDTO search(String userEmail, String query, String cursor, int limit) {
+        if (!available) {
+            throw new IllegalStateException("Message search is not available yet");
+        }
+        if (query == null || query.isBlank()) {
+            throw new IllegalArgumentException("Search query is required");
+        }
+        if (query.length() > maxQueryLength) {
+            throw new IllegalArgumentException("Search query is longer than " + maxQueryLength + " characters");
+        }
+        List<Long> ids = jdbcTemplate.queryForList(USER_ID_SQL, Long.class, userEmail);
+        if (ids.isEmpty()) {
+            throw new IllegalArgumentException("User not found: " + userEmail);
+        }
+        long userId = ids.get(0);
+        int pageSize = Math.max(1, Math.min(limit, ChatHistoryService.MAX_PAGE_SIZE));
+
+        // Newest first: start just after the largest possible position
+        Timestamp beforeTimestamp = Timestamp.valueOf("9999-12-31 00:00:00");
+        long beforeId = Long.MAX_VALUE;
+        if (cursor != null && !cursor.isBlank()) {
+            ChatHistoryService.Cursor position = ChatHistoryService.Cursor.decode(cursor);
+            beforeTimestamp = Timestamp.valueOf(position.timestamp());
+            beforeId = position.id();
+        }
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "failure";
+        try {
+            // Only lasts until the end of this transaction
+            jdbcTemplate.execute("SET LOCAL statement_timeout = " + timeoutMs);
+            // Fetch one extra row to find out whether an older page exists
+            List<Message> rows = jdbcTemplate.query(SEARCH_SQL, (rs, rowNum) -> toMessage(rs),
+                    textConfig, query, userId, userId, userId, beforeTimestamp, beforeId, pageSize + 1);
+            outcome = "success";
+
+            String nextCursor = null;
+            if (rows.size() > pageSize) {
+                Message last = rows.get(pageSize - 1);
+                nextCursor = new ChatHistoryService.Cursor(last.getTimestamp(), last.getId()).encode();
+            }
+            return new ConversationPageDTO(new ArrayList<>(rows.subList(0, Math.min(rows.size(), pageSize))), nextCursor);
+        } catch (DataAccessException e) {
+            if (isStatementTimeout(e)) {
+                outcome = "timeout";
+                throw new IllegalArgumentException("Search took too long, try more specific terms");
+            }
+            throw e;
+        } finally {
+            sample.stop(meterRegistry.timer("chat.search", "outcome", outcome));
+        }
+    }
+
+    // 57014 = query_canceled, raised when statement_timeout is reached
+    private static boolean isStatementTimeout(DataAccessException e) {
+        return e.getMostSpecificCause() instanceof SQLException sql && "57014".equals(sql.getSQLState());
+    }
+
+    private static Message toMessage(ResultSet rs) throws SQLException {
+        Message message = new Message();
+        message.setId(rs.getLong("id"));
+        message.setClientMessageId(rs.getString("client_message_id"));
+        message.setContent(rs.getString("content"));
+        message.setTimestamp(rs.getTimestamp("timestamp").toLocalDateTime());
+        message.setSenderEmail(rs.getString("sender_email"));
+        message.setRecipientEmail(rs.getString("receiver_email"));
+        long roomId = rs.getLong("room_id");
+        message.setRoomId(rs.wasNull() ? null : roomId);
+        return message;
+    }
+}
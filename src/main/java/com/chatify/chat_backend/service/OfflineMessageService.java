@@ -0,0 +1,256 @@
+package com.chatify.chat_backend.service;
+
+import com.chatify.chat_backend.cluster.ClusterMessageRouter;
+import com.chatify.chat_backend.dto.Message;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+
+import java.security.Principal;
+import java.sql.PreparedStatement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays messages sent while the recipient was offline.
+ *
+ * ChatController stores such messages with delivered = false. Once an authenticated
+ * session subscribes to /user/queue/messages, its backlog is sent in pages of
+ * page-size, read in (timestamp, id) order from idx_chat_messages_undelivered and
+ * marked delivered page by page. Replays run on a small dedicated pool with a pause between pages,
+ * so a user returning to thousands of messages cannot delay live traffic.
+ *
+ * A replay starts once every node has written the messages sent before the
+ * subscription. Each node publishes its write-behind watermark through the cluster
+ * registry, so the nodes must share one registry (app.cluster.transport=jdbc), also
+ * in relay mode, and keep their clocks in sync.
+ */
+@Service
+public class OfflineMessageService {
+
+    private static final Logger log = LoggerFactory.getLogger(OfflineMessageService.class);
+
+    private static final String USER_ID_SQL = "SELECT id FROM users WHERE email = ?";
+
+    // Every page starts over at the oldest undelivered row: ids come from per-node
+    // blocks and are not in commit order, so a cursor on id could skip a row
+    private static final String PAGE_SQL = """
+            SELECT m.id, s.email AS sender_email, m.client_message_id, m.content, m.timestamp
+            FROM chat_messages m
+            JOIN users s ON s.id = m.sender_id
+            WHERE m.receiver_id = ? AND m.delivered = FALSE
+            ORDER BY m.timestamp, m.id
+            LIMIT ?
+            """;
+
+    // Only the rows actually sent: a row committed later by another node may sort inside the page
+    private static final String MARK_DELIVERED_SQL = """
+            UPDATE chat_messages SET delivered = TRUE
+            WHERE receiver_id = ? AND id = ANY (?)
+            """;
+
+    @Value("${app.chat.offline.page-size:100}")
+    private int pageSize;
+
+    /** Pause between two pages of the same replay. */
+    @Value("${app.chat.offline.page-delay-ms:20}")
+    private long pageDelayMs;
+
+    /** Replays running at once; further users wait their turn. */
+    @Value("${app.chat.offline.replay-threads:2}")
+    private int replayThreads;
+
+    /** How often this node publishes its write-behind watermark to the cluster. */
+    @Value("${app.chat.offline.watermark-interval-ms:100}")
+    private long watermarkIntervalMs;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MessagePersistenceService persistenceService;
+    private final ClusterMessageRouter messageRouter;
+    private final OutboundMessageCoalescer outbound;
+    private final MeterRegistry meterRegistry;
+
+    // Connected sessions that have not subscribed to their queue yet
+    private final Set<String> awaitingSubscribe = ConcurrentHashMap.newKeySet();
+    // Users with a replay in progress, one replay per user is enough
+    private final Set<String> replaying = ConcurrentHashMap.newKeySet();
+
+    private ScheduledExecutorService scheduler;
+    private Counter replayedCounter;
+
+    public OfflineMessageService(
+            JdbcTemplate jdbcTemplate,
+            MessagePersistenceService persistenceService,
+            ClusterMessageRouter messageRouter,
+            OutboundMessageCoalescer outbound,
+            MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.persistenceService = persistenceService;
+        this.messageRouter = messageRouter;
+        this.outbound = outbound;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newScheduledThreadPool(replayThreads, runnable -> {
+            Thread thread = new Thread(runnable, "offline-replay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        replayedCounter = meterRegistry.counter("chat.offline.replayed");
+        scheduler.scheduleWithFixedDelay(this::reportPersistedThrough, 0, watermarkIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /** ----------- Session events ----------- */
+
+    @EventListener
+    public void onSessionConnected(SessionConnectedEvent event) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        if (event.getUser() != null && sessionId != null) {
+            awaitingSubscribe.add(sessionId);
+        }
+    }
+
+    /**
+     * Messages sent before the client subscribed would be dropped by the broker,
+     * so the replay starts on the first subscription to the private queue.
+     */
+    @EventListener
+    public void onSessionSubscribe(SessionSubscribeEvent event) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        String destination = SimpMessageHeaderAccessor.getDestination(event.getMessage().getHeaders());
+        Principal user = event.getUser();
+        if (user == null || destination == null || !destination.startsWith("/user" + OutboundMessageCoalescer.SINGLE_QUEUE)) {
+            return;
+        }
+        if (awaitingSubscribe.remove(sessionId) && replaying.add(user.getName())) {
+            submit(new Replay(user.getName(), LocalDateTime.now()), 0);
+        }
+    }
+
+    @EventListener
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        awaitingSubscribe.remove(event.getSessionId());
+    }
+
+    /** ----------- Replay ----------- */
+
+    private void reportPersistedThrough() {
+        try {
+            messageRouter.reportPersistedThrough(persistenceService.getPersistedThrough());
+        } catch (RuntimeException e) {
+            // Replays wait for the next report, the periodic task must keep running
+            log.warn("Could not publish the persistence watermark", e);
+        }
+    }
+
+    private void submit(Replay replay, long delayMs) {
+        try {
+            scheduler.schedule(replay, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down, the messages stay undelivered for the next connect
+            replaying.remove(replay.email);
+        }
+    }
+
+    private final class Replay implements Runnable {
+        private final String email;
+        private final LocalDateTime subscribedAt;
+        private Long receiverId;
+
+        private Replay(String email, LocalDateTime subscribedAt) {
+            this.email = email;
+            this.subscribedAt = subscribedAt;
+        }
+
+        @Override
+        public void run() {
+            boolean more = false;
+            try {
+                more = replayPage();
+            } catch (DataAccessException e) {
+                log.error("Offline replay for {} failed, will retry on next connect", email, e);
+            } finally {
+                if (more) {
+                    submit(this, pageDelayMs);
+                } else {
+                    replaying.remove(email);
+                }
+            }
+        }
+
+        /**
+         * @return true if this replay must run again (more pages or writes still pending)
+         */
+        private boolean replayPage() {
+            if (!messageRouter.hasLocalSession(email)) {
+                return false; // Gone again, the rest stays undelivered
+            }
+            // Messages sent while offline may still be in a write-behind queue, on any node
+            reportPersistedThrough();
+            if (!messageRouter.isPersistedThrough(subscribedAt)) {
+                return true;
+            }
+            if (receiverId == null) {
+                List<Long> ids = jdbcTemplate.queryForList(USER_ID_SQL, Long.class, email);
+                if (ids.isEmpty()) {
+                    return false;
+                }
+                receiverId = ids.get(0);
+            }
+
+            List<Message> page = new ArrayList<>(pageSize);
+            jdbcTemplate.query(PAGE_SQL, rs -> {
+                Message message = new Message();
+                message.setId(rs.getLong("id"));
+                message.setSenderEmail(rs.getString("sender_email"));
+                message.setRecipientEmail(email);
+                message.setClientMessageId(rs.getString("client_message_id"));
+                message.setContent(rs.getString("content"));
+                message.setTimestamp(rs.getTimestamp("timestamp").toLocalDateTime());
+                page.add(message);
+            }, receiverId, pageSize);
+            if (page.isEmpty()) {
+                return false;
+            }
+
+            page.forEach(outbound::send);
+            Long[] sentIds = page.stream().map(Message::getId).toArray(Long[]::new);
+            int marked = jdbcTemplate.update(connection -> {
+                PreparedStatement statement = connection.prepareStatement(MARK_DELIVERED_SQL);
+                statement.setLong(1, receiverId);
+                statement.setArray(2, connection.createArrayOf("bigint", sentIds));
+                return statement;
+            });
+            replayedCounter.increment(page.size());
+
+            // Nothing marked would read the same page again
+            return marked > 0 && page.size() == pageSize;
+        }
+    }
+}
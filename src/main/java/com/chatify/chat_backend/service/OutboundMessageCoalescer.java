@@ -0,0 +1,170 @@
+package com.chatify.chat_backend.service;
+
+import com.chatify.chat_backend.dto.Message;
+import com.chatify.chat_backend.dto.ReceiptDTO;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional coalescing of private messages on the outbound path.
+ * Messages for the same recipient arriving within window-ms are sent as one
+ * STOMP frame holding a JSON array on /user/queue/messages-batch; a lone message
+ * still goes to /user/queue/messages. Clients enabling this subscribe to both.
+ *
+ * A message never waits longer than window-ms, a full batch (max-batch) is sent
+ * at once, and batches of one recipient are sent in order.
+ */
+@Service
+public class OutboundMessageCoalescer {
+
+    public static final String SINGLE_QUEUE = "/queue/messages";
+    public static final String BATCH_QUEUE = "/queue/messages-batch";
+
+    @Value("${app.websocket.coalesce.enabled:false}")
+    private boolean enabled;
+
+    /** Latency cap: the longest a message is held back waiting for others. */
+    @Value("${app.websocket.coalesce.window-ms:10}")
+    private long windowMs;
+
+    @Value("${app.websocket.coalesce.max-batch:50}")
+    private int maxBatch;
+
+    private final SimpMessageSendingOperations messagingTemplate;
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, Buffer> buffers = new ConcurrentHashMap<>();
+    private ScheduledExecutorService scheduler;
+    private DistributionSummary batchSizes;
+
+    public OutboundMessageCoalescer(SimpMessageSendingOperations messagingTemplate, MeterRegistry meterRegistry) {
+        this.messagingTemplate = messagingTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ws-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        batchSizes = DistributionSummary.builder("websocket.coalesce.batch.size")
+                .description("Messages per outbound frame when coalescing is enabled")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        buffers.values().forEach(this::flush);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Send a message to its recipient, possibly together with the next few.
+     */
+    public void send(Message message) {
+        if (!enabled) {
+            messagingTemplate.convertAndSendToUser(message.getRecipientEmail(), SINGLE_QUEUE, message);
+            return;
+        }
+
+        while (true) {
+            Buffer buffer = buffers.computeIfAbsent(message.getRecipientEmail(), Buffer::new);
+            synchronized (buffer) {
+                if (buffer.retired) {
+                    // Flushed and removed since we looked it up, the next lookup creates a new one
+                    continue;
+                }
+                buffer.pending.add(message);
+                if (buffer.pending.size() >= maxBatch) {
+                    sendPending(buffer);
+                } else if (!buffer.flushScheduled) {
+                    buffer.flushScheduled = true;
+                    scheduler.schedule(() -> flush(buffer), windowMs, TimeUnit.MILLISECONDS);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Publish a room message to its topic. Never coalesced: the broker already
+     * turns it into one frame per subscribed session.
+     */
+    public void sendToRoom(Message message) {
+        messagingTemplate.convertAndSend(RoomService.ROOM_TOPIC_PREFIX + message.getRoomId(), message);
+    }
+
+    /**
+     * Send a receipt to the user whose messages were acknowledged. Never coalesced,
+     * receipts are cumulative and already one per advanced mark.
+     */
+    public void sendReceipt(String email, ReceiptDTO receipt) {
+        messagingTemplate.convertAndSendToUser(email, ReceiptService.RECEIPT_QUEUE, receipt);
+    }
+
+    private void flush(Buffer buffer) {
+        synchronized (buffer) {
+            buffer.flushScheduled = false;
+            sendPending(buffer);
+            if (!buffer.retired) {
+                // Idle recipient, a later message simply creates a new buffer. Retired under
+                // the lock, so a sender still holding this one retries instead of adding to it.
+                buffer.retired = true;
+                buffers.remove(buffer.recipient, buffer);
+            }
+        }
+    }
+
+    /**
+     * Called with the buffer lock held, so frames of one recipient leave in order.
+     */
+    private void sendPending(Buffer buffer) {
+        int size = buffer.pending.size();
+        if (size == 0) {
+            return;
+        }
+        if (size == 1) {
+            messagingTemplate.convertAndSendToUser(buffer.recipient, SINGLE_QUEUE, buffer.pending.get(0));
+        } else {
+            messagingTemplate.convertAndSendToUser(buffer.recipient, BATCH_QUEUE, new ArrayList<>(buffer.pending));
+        }
+        batchSizes.record(size);
+        buffer.pending.clear();
+    }
+
+    private static final class Buffer {
+        private final String recipient;
+        private final List<Message> pending = new ArrayList<>();
+        private boolean flushScheduled;
+        private boolean retired;
+
+        private Buffer(String recipient) {
+            this.recipient = recipient;
+        }
+    }
+}
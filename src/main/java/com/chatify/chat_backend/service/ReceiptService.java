@@ -0,0 +1,381 @@
+package com.chatify.chat_backend.service;
+
+import com.chatify.chat_backend.cluster.ClusterMessageRouter;
+import com.chatify.chat_backend.cluster.ReceiptNotice;
+import com.chatify.chat_backend.dto.ReceiptDTO;
+import com.chatify.chat_backend.util.ExpiringCache;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.SqlParameterValue;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivery and read receipts as high-water marks per (user, peer) conversation.
+ *
+ * Clients acknowledge cumulatively ("read everything from bob up to T"). Acks are
+ * merged in memory, the sender is notified on /user/queue/receipts on whichever node
+ * holds their sessions whenever a mark moves forward, and the merged marks are written
+ * to conversation_receipts every flush-interval-ms in two JDBC batches. chat_messages
+ * is never updated per ack. Whether an ack moves a mark forward is decided against the
+ * unflushed marks and the stored ones, the latter read once per conversation and kept
+ * in a bounded cache.
+ *
+ * Marks are server timestamps, not message ids: ids come from per-node blocks, so
+ * "up to id X" would not cover the messages sent before X on another node.
+ *
+ * The first ack of a conversation is only taken if the peer has sent the user a
+ * message up to then. That message may still be in a write-behind queue, so the
+ * check is repeated until the cluster has written everything up to the ack.
+ */
+@Service
+public class ReceiptService {
+
+    private static final Logger log = LoggerFactory.getLogger(ReceiptService.class);
+
+    public static final String RECEIPT_QUEUE = "/queue/receipts";
+
+    // GREATEST ignores NULL, so a mark only ever moves forward
+    private static final String UPDATE_SQL = """
+            UPDATE conversation_receipts
+            SET delivered_up_to = GREATEST(delivered_up_to, ?), read_up_to = GREATEST(read_up_to, ?)
+            WHERE user_id = (SELECT id FROM users WHERE email = ?)
+              AND peer_id = (SELECT id FROM users WHERE email = ?)
+            """;
+
+    private static final String INSERT_SQL = """
+            INSERT INTO conversation_receipts (delivered_up_to, read_up_to, user_id, peer_id)
+            SELECT ?, ?, u.id, p.id
+            FROM users u, users p
+            WHERE u.email = ? AND p.email = ?
+            """;
+
+    private static final String CONVERSATION_SQL = """
+            SELECT 1 FROM chat_messages
+            WHERE sender_id = (SELECT id FROM users WHERE email = ?)
+              AND receiver_id = (SELECT id FROM users WHERE email = ?)
+              AND timestamp <= ?
+            LIMIT 1
+            """;
+
+    // An ack checked this often waits at most about 5 s for its message to be written
+    private static final long VERIFY_RETRY_MS = 100;
+    private static final int VERIFY_ATTEMPTS = 50;
+
+    private static final String SELECT_SQL = """
+            SELECT r.delivered_up_to, r.read_up_to
+            FROM conversation_receipts r
+            JOIN users u ON u.id = r.user_id
+            JOIN users p ON p.id = r.peer_id
+            WHERE u.email = ? AND p.email = ?
+            """;
+
+    @Value("${app.chat.receipts.flush-interval-ms:1000}")
+    private long flushIntervalMs;
+
+    /** Conversations whose stored marks are kept in memory. */
+    @Value("${app.chat.receipts.stored-cache.max-size:100000}")
+    private int storedCacheMaxSize;
+
+    /** How long stored marks are trusted; another node may have moved them meanwhile. */
+    @Value("${app.chat.receipts.stored-cache.ttl-ms:600000}")
+    private long storedCacheTtlMs;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ClusterMessageRouter messageRouter;
+    private final MeterRegistry meterRegistry;
+
+    // Marks acknowledged since the last flush
+    private final Map<ConversationKey, Marks> pending = new ConcurrentHashMap<>();
+    // Marks already in conversation_receipts, as far as this node knows
+    private ExpiringCache<ConversationKey, Marks> stored;
+
+    private ScheduledExecutorService scheduler;
+    private Timer flushTimer;
+
+    public ReceiptService(
+            JdbcTemplate jdbcTemplate,
+            ClusterMessageRouter messageRouter,
+            MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.messageRouter = messageRouter;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void start() {
+        stored = new ExpiringCache<>(storedCacheMaxSize);
+        Gauge.builder("chat.receipts.pending", pending, Map::size)
+                .description("Conversations with receipt marks waiting to be written")
+                .register(meterRegistry);
+        flushTimer = Timer.builder("chat.receipts.flush")
+                .description("Time spent writing one batch of receipt marks")
+                .register(meterRegistry);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "receipt-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(flushIntervalMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    /**
+     * Merge a cumulative ack and notify the peer if it moved a mark forward.
+     * @param userEmail the authenticated user acknowledging messages
+     * @param receipt   peerEmail = sender of the acknowledged messages
+     * @throws IllegalArgumentException if the peer has sent the user nothing up to then
+     */
+    public void acknowledge(String userEmail, ReceiptDTO receipt) {
+        if (receipt.getType() == null || receipt.getUpTo() == null || receipt.getPeerEmail() == null) {
+            throw new IllegalArgumentException("Receipt needs a peerEmail, a type and upTo");
+        }
+        // Timestamps are assigned by the server, a mark in the future cannot be genuine
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime upTo = receipt.getUpTo().isAfter(now) ? now : receipt.getUpTo();
+        Ack ack = new Ack(new ConversationKey(userEmail, receipt.getPeerEmail()), receipt.getType(), upTo);
+
+        if (!isKnownConversation(ack.conversation()) && !hasMessagesUpTo(ack)) {
+            if (messageRouter.isPersistedThrough(upTo)) {
+                throw new IllegalArgumentException("No messages from " + receipt.getPeerEmail() + " to acknowledge");
+            }
+            scheduleVerification(ack, 1);
+            return;
+        }
+        merge(ack);
+    }
+
+    private void scheduleVerification(Ack ack, int attempt) {
+        try {
+            scheduler.schedule(() -> verify(ack, attempt), VERIFY_RETRY_MS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down, the client acks again on its next connect
+        }
+    }
+
+    // Runs on the receipt writer
+    private void verify(Ack ack, int attempt) {
+        try {
+            if (isKnownConversation(ack.conversation()) || hasMessagesUpTo(ack)) {
+                merge(ack);
+            } else if (!messageRouter.isPersistedThrough(ack.upTo()) && attempt < VERIFY_ATTEMPTS) {
+                scheduleVerification(ack, attempt + 1);
+            } else {
+                log.debug("Dropped receipt from {}: no messages from {} to acknowledge",
+                        ack.conversation().userEmail(), ack.conversation().peerEmail());
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not check receipt from {}, dropped", ack.conversation().userEmail(), e);
+        }
+    }
+
+    /**
+     * @return true if the conversation already has marks, stored or waiting to be written
+     */
+    private boolean isKnownConversation(ConversationKey conversation) {
+        return pending.containsKey(conversation) || !storedMarks(conversation).isEmpty();
+    }
+
+    private boolean hasMessagesUpTo(Ack ack) {
+        return !jdbcTemplate.queryForList(CONVERSATION_SQL, Integer.class,
+                ack.conversation().peerEmail(), ack.conversation().userEmail(), Timestamp.valueOf(ack.upTo())).isEmpty();
+    }
+
+    private void merge(Ack receipt) {
+        LocalDateTime upTo = receipt.upTo();
+        // Read implies delivered
+        Marks ack = receipt.type() == ReceiptDTO.Type.READ ? new Marks(upTo, upTo) : new Marks(upTo, null);
+
+        ConversationKey conversation = receipt.conversation();
+        Marks storedMarks = storedMarks(conversation);
+        boolean[] advanced = new boolean[1];
+        pending.compute(conversation, (key, marks) -> {
+            Marks known = marks == null ? storedMarks : storedMarks.merge(marks);
+            advanced[0] = !known.merge(ack).equals(known);
+            if (!advanced[0]) {
+                return marks; // Nothing new to write either
+            }
+            return marks == null ? ack : marks.merge(ack);
+        });
+        meterRegistry.counter("chat.receipts.acks", "type", receipt.type().name()).increment();
+
+        if (advanced[0]) {
+            messageRouter.routeReceipt(new ReceiptNotice(conversation.peerEmail(),
+                    new ReceiptDTO(conversation.userEmail(), receipt.type(), upTo)));
+        }
+    }
+
+    /**
+     * Receipts a peer gave for the messages the user sent them.
+     * @return up to two receipts, DELIVERED and READ, omitted when nothing was acknowledged
+     */
+    public List<ReceiptDTO> getReceipts(String userEmail, String peerEmail) {
+        ConversationKey key = new ConversationKey(peerEmail, userEmail);
+        Marks marks = loadStoredMarks(key);
+        Marks unflushed = pending.get(key);
+        if (unflushed != null) {
+            marks = marks.merge(unflushed);
+        }
+
+        List<ReceiptDTO> receipts = new ArrayList<>(2);
+        if (marks.deliveredUpTo() != null) {
+            receipts.add(new ReceiptDTO(peerEmail, ReceiptDTO.Type.DELIVERED, marks.deliveredUpTo()));
+        }
+        if (marks.readUpTo() != null) {
+            receipts.add(new ReceiptDTO(peerEmail, ReceiptDTO.Type.READ, marks.readUpTo()));
+        }
+        return receipts;
+    }
+
+    /**
+     * @return the marks in conversation_receipts, cached; both null if there is no row yet
+     */
+    private Marks storedMarks(ConversationKey key) {
+        Marks marks = stored.get(key);
+        return marks != null ? marks : loadStoredMarks(key);
+    }
+
+    private Marks loadStoredMarks(ConversationKey key) {
+        List<Marks> rows = jdbcTemplate.query(SELECT_SQL, (rs, rowNum) -> new Marks(
+                toLocalDateTime(rs.getTimestamp("delivered_up_to")),
+                toLocalDateTime(rs.getTimestamp("read_up_to"))), key.userEmail(), key.peerEmail());
+        Marks marks = rows.isEmpty() ? new Marks(null, null) : rows.get(0);
+        stored.put(key, marks, storedCacheTtlMs);
+        return marks;
+    }
+
+    /** ----------- Writer ----------- */
+
+    private void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<ConversationKey> keys = new ArrayList<>();
+        List<Object[]> rows = new ArrayList<>();
+        for (ConversationKey key : pending.keySet()) {
+            Marks marks = pending.remove(key);
+            if (marks != null) {
+                keys.add(key);
+                rows.add(parameters(key, marks));
+            }
+        }
+
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            int[] updated = jdbcTemplate.batchUpdate(UPDATE_SQL, rows);
+            // First receipt of a conversation: no row to update yet
+            List<Object[]> missing = new ArrayList<>();
+            for (int i = 0; i < updated.length; i++) {
+                if (updated[i] == 0) {
+                    missing.add(rows.get(i));
+                }
+            }
+            if (!missing.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_SQL, missing);
+            }
+            for (int i = 0; i < keys.size(); i++) {
+                markStored(keys.get(i), rows.get(i));
+            }
+        } catch (DuplicateKeyException e) {
+            // Another node inserted the row first, the update succeeds next time
+            requeue(keys, rows);
+        } catch (DataAccessException e) {
+            log.error("Failed to write {} receipt marks, retrying next flush", rows.size(), e);
+            requeue(keys, rows);
+        } finally {
+            sample.stop(flushTimer);
+        }
+    }
+
+    // Written with GREATEST, so the row holds at least the cached marks merged with these
+    private void markStored(ConversationKey key, Object[] row) {
+        Marks cached = stored.get(key);
+        if (cached != null) {
+            stored.put(key, cached.merge(new Marks(timestampOf(row[0]), timestampOf(row[1]))), storedCacheTtlMs);
+        }
+    }
+
+    private void requeue(List<ConversationKey> keys, List<Object[]> rows) {
+        for (int i = 0; i < keys.size(); i++) {
+            Object[] row = rows.get(i);
+            Marks marks = new Marks(timestampOf(row[0]), timestampOf(row[1]));
+            pending.merge(keys.get(i), marks, Marks::merge);
+        }
+    }
+
+    private static Object[] parameters(ConversationKey key, Marks marks) {
+        return new Object[]{
+                timestamp(marks.deliveredUpTo()),
+                timestamp(marks.readUpTo()),
+                key.userEmail(),
+                key.peerEmail()
+        };
+    }
+
+    // Typed so a NULL mark still binds as a timestamp
+    private static SqlParameterValue timestamp(LocalDateTime value) {
+        return new SqlParameterValue(Types.TIMESTAMP, value == null ? null : Timestamp.valueOf(value));
+    }
+
+    private static LocalDateTime timestampOf(Object parameter) {
+        return toLocalDateTime((Timestamp) ((SqlParameterValue) parameter).getValue());
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toLocalDateTime();
+    }
+
+    private record ConversationKey(String userEmail, String peerEmail) {
+    }
+
+    private record Ack(ConversationKey conversation, ReceiptDTO.Type type, LocalDateTime upTo) {
+    }
+
+    private record Marks(LocalDateTime deliveredUpTo, LocalDateTime readUpTo) {
+        boolean isEmpty() {
+            return deliveredUpTo == null && readUpTo == null;
+        }
+
+        Marks merge(Marks other) {
+            return new Marks(max(deliveredUpTo, other.deliveredUpTo), max(readUpTo, other.readUpTo));
+        }
+
+        private static LocalDateTime max(LocalDateTime a, LocalDateTime b) {
+            if (a == null) {
+                return b;
+            }
+            return b == null || a.isAfter(b) ? a : b;
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package com.chatify.chat_backend.service;
+
+import com.chatify.chat_backend.dto.Message;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The last messages of recently opened 1:1 conversations, so the first history page
+ * of a chat is served from memory.
+ *
+ * A conversation enters the cache when ChatHistoryService loads its latest page from
+ * the database; from then on MessagePersistenceService appends every message it
+ * writes to it. Appending after the write (instead of when the message is sent) keeps
+ * the cache equal to the database: a send racing with the load is either in the
+ * loaded rows or appended afterwards, and ends up once in the buffer either way.
+ *
+ * Each conversation is a fixed-size ring buffer. Conversations are evicted least
+ * recently used first once their estimated size exceeds max-bytes. Messages written
+ * by other nodes are not appended here and would be missing until ttl-ms, so the
+ * cache is only on by default for a single node: the in-process cluster transport
+ * with the simple broker.
+ *
+ * Properties:
+ *   app.chat.recent-cache.enabled                    default true on a single node, false otherwise
+ *   app.chat.recent-cache.messages-per-conversation  default 50, largest page served from memory
+ *   app.chat.recent-cache.max-bytes                  default 64 MB, estimated heap use
+ *   app.chat.recent-cache.ttl-ms                     default 60000
+ */
+@Service
+public class RecentMessageCache {
+
+    // Rough heap cost of one cached message besides its strings, and of one conversation
+    private static final int MESSAGE_OVERHEAD_BYTES = 120;
+    private static final int CONVERSATION_OVERHEAD_BYTES = 200;
+
+    private static final Comparator<CachedMessage> OLDEST_FIRST = Comparator
+            .comparing(CachedMessage::timestamp)
+            .thenComparingLong(CachedMessage::id);
+
+    @Value("${app.chat.recent-cache.enabled:}")
+    private String enabledSetting;
+
+    @Value("${app.cluster.transport:in-process}")
+    private String clusterTransport;
+
+    @Value("${app.websocket.broker.mode:simple}")
+    private String brokerMode;
+
+    private boolean enabled;
+
+    @Value("${app.chat.recent-cache.messages-per-conversation:50}")
+    private int messagesPerConversation;
+
+    @Value("${app.chat.recent-cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    @Value("${app.chat.recent-cache.ttl-ms:60000}")
+    private long ttlMs;
+
+    private final MeterRegistry meterRegistry;
+
+    // Access order = LRU order; guarded by itself, every operation on it is O(1)
+    private final LinkedHashMap<String, RingBuffer> conversations = new LinkedHashMap<>(1024, 0.75f, true);
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    private Counter hits;
+    private Counter misses;
+    private Counter evictions;
+
+    public RecentMessageCache(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void initialize() {
+        boolean singleNode = "in-process".equals(clusterTransport) && "simple".equalsIgnoreCase(brokerMode);
+        enabled = enabledSetting.isBlank() ? singleNode : Boolean.parseBoolean(enabledSetting);
+        hits = meterRegistry.counter("chat.recent-cache.requests", "result", "hit");
+        misses = meterRegistry.counter("chat.recent-cache.requests", "result", "miss");
+        evictions = meterRegistry.counter("chat.recent-cache.evictions");
+        Gauge.builder("chat.recent-cache.bytes", usedBytes, AtomicLong::get)
+                .description("Estimated heap used by cached conversations")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return the largest page size getLatest can answer, 0 when the cache is disabled
+     */
+    public int maxPageSize() {
+        return enabled ? messagesPerConversation : 0;
+    }
+
+    /**
+     * Newest messages of a cached conversation.
+     * @param limit page size, at most maxPageSize()
+     * @return newest first, limit + 1 messages if older ones exist (like the database
+     *         query), or null if the conversation is not cached
+     */
+    public List<Message> getLatest(String userEmail, String peerEmail, int limit) {
+        if (!enabled || limit > messagesPerConversation) {
+            return null;
+        }
+        RingBuffer buffer;
+        synchronized (conversations) {
+            buffer = conversations.get(key(userEmail, peerEmail));
+        }
+        List<Message> page = buffer == null ? null : buffer.latest(limit);
+        if (page == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return page;
+    }
+
+    /**
+     * Start caching a conversation; call before reading its latest page from the
+     * database. Messages written from now on are collected until populate().
+     */
+    public void beginLoad(String userEmail, String peerEmail) {
+        if (!enabled) {
+            return;
+        }
+        String key = key(userEmail, peerEmail);
+        RingBuffer expired = null;
+        synchronized (conversations) {
+            RingBuffer current = conversations.get(key);
+            if (current == null || current.isExpired()) {
+                expired = current;
+                conversations.put(key, new RingBuffer(key, messagesPerConversation + 1));
+            }
+        }
+        if (expired != null) {
+            expired.release();
+        }
+        evictOverBudget();
+    }
+
+    /**
+     * Give up a load started with beginLoad(), e.g. because the database read failed.
+     * A concurrent load of the same conversation then caches nothing, which is safe.
+     */
+    public void abortLoad(String userEmail, String peerEmail) {
+        if (!enabled) {
+            return;
+        }
+        String key = key(userEmail, peerEmail);
+        RingBuffer aborted = null;
+        synchronized (conversations) {
+            RingBuffer current = conversations.get(key);
+            if (current != null && current.isLoading()) {
+                conversations.remove(key);
+                aborted = current;
+            }
+        }
+        if (aborted != null) {
+            aborted.release();
+        }
+    }
+
+    /**
+     * Complete a load started with beginLoad().
+     * @param rows newest first, the result of a page of maxPageSize() + 1 rows;
+     *             fewer rows mean the conversation is complete
+     */
+    public void populate(String userEmail, String peerEmail, List<Message> rows) {
+        if (!enabled) {
+            return;
+        }
+        RingBuffer buffer;
+        synchronized (conversations) {
+            buffer = conversations.get(key(userEmail, peerEmail));
+        }
+        // Null if evicted meanwhile; nothing is cached then, which is always safe
+        if (buffer != null) {
+            buffer.fill(rows, rows.size() <= messagesPerConversation);
+            evictOverBudget();
+        }
+    }
+
+    /**
+     * Add a message that was just written to chat_messages. Conversations that are
+     * not cached are skipped, they are loaded from the database when next opened.
+     */
+    public void append(Message message) {
+        if (!enabled || message.getRecipientEmail() == null || message.getId() == null) {
+            return;
+        }
+        RingBuffer buffer;
+        synchronized (conversations) {
+            buffer = conversations.get(key(message.getSenderEmail(), message.getRecipientEmail()));
+        }
+        if (buffer != null) {
+            buffer.append(message);
+            evictOverBudget();
+        }
+    }
+
+    private void evictOverBudget() {
+        if (usedBytes.get() <= maxBytes) {
+            return;
+        }
+        List<RingBuffer> evicted = new ArrayList<>();
+        synchronized (conversations) {
+            Iterator<RingBuffer> eldest = conversations.values().iterator();
+            long remaining = usedBytes.get();
+            while (remaining > maxBytes && eldest.hasNext()) {
+                RingBuffer buffer = eldest.next();
+                eldest.remove();
+                evicted.add(buffer);
+                remaining -= buffer.bytes();
+            }
+        }
+        evicted.forEach(RingBuffer::release);
+        evictions.increment(evicted.size());
+    }
+
+    // Same key for both directions of a conversation
+    private static String key(String a, String b) {
+        return a.compareTo(b) <= 0 ? a + '\n' + b : b + '\n' + a;
+    }
+
+    // Postgres keeps microseconds, cached timestamps must match the stored ones for cursors to work
+    private static LocalDateTime toMicros(LocalDateTime timestamp) {
+        return timestamp.plusNanos(500).truncatedTo(ChronoUnit.MICROS);
+    }
+
+    private static long estimateBytes(CachedMessage message) {
+        long strings = 2L * (message.content() == null ? 0 : message.content().length())
+                + 2L * (message.clientMessageId() == null ? 0 : message.clientMessageId().length());
+        return MESSAGE_OVERHEAD_BYTES + strings;
+    }
+
+    /**
+     * Compact form: emails are stored once per conversation, a message only says which
+     * of the two participants sent it.
+     */
+    private record CachedMessage(long id, LocalDateTime timestamp, boolean sentByFirst,
+                                 String content, String clientMessageId) {
+    }
+
+    private final class RingBuffer {
+        private final String firstEmail;
+        private final String secondEmail;
+        private final CachedMessage[] slots;
+        private int next;   // Slot the next append goes to
+        private int count;
+        private boolean loading = true;
+        private boolean complete;  // Holds the whole conversation, no older messages exist
+        private boolean released;  // Removed from the cache, appends are ignored
+        // Load start until filled; a load that never completes expires like a loaded buffer
+        private long loadedAtNanos = System.nanoTime();
+        private long bytes = CONVERSATION_OVERHEAD_BYTES;
+
+        private RingBuffer(String key, int capacity) {
+            int separator = key.indexOf('\n');
+            this.firstEmail = key.substring(0, separator);
+            this.secondEmail = key.substring(separator + 1);
+            this.slots = new CachedMessage[capacity];
+            usedBytes.addAndGet(bytes);
+        }
+
+        synchronized void append(Message message) {
+            if (released) {
+                return;
+            }
+            add(new CachedMessage(message.getId(), toMicros(message.getTimestamp()),
+                    firstEmail.equals(message.getSenderEmail()), message.getContent(), message.getClientMessageId()));
+        }
+
+        /**
+         * Merge the rows read from the database with what was appended during the load.
+         */
+        synchronized void fill(List<Message> rows, boolean wholeConversation) {
+            if (released || !loading) {
+                return; // A concurrent load got here first
+            }
+            Set<Long> appended = new HashSet<>();
+            List<CachedMessage> merged = new ArrayList<>(rows.size() + count);
+            for (CachedMessage slot : slots) {
+                if (slot != null) {
+                    appended.add(slot.id());
+                    merged.add(slot);
+                }
+            }
+            for (Message row : rows) {
+                if (!appended.contains(row.getId())) {
+                    merged.add(new CachedMessage(row.getId(), row.getTimestamp(),
+                            firstEmail.equals(row.getSenderEmail()), row.getContent(), row.getClientMessageId()));
+                }
+            }
+            merged.sort(OLDEST_FIRST);
+
+            Arrays.fill(slots, null);
+            usedBytes.addAndGet(CONVERSATION_OVERHEAD_BYTES - bytes);
+            bytes = CONVERSATION_OVERHEAD_BYTES;
+            next = 0;
+            count = 0;
+            merged.forEach(this::add);
+
+            complete = wholeConversation && merged.size() <= slots.length;
+            loading = false;
+            loadedAtNanos = System.nanoTime();
+        }
+
+        /**
+         * @return null while loading, when expired, or when the page cannot be answered exactly
+         */
+        synchronized List<Message> latest(int limit) {
+            if (loading || isExpired()) {
+                return null;
+            }
+            // With limit + 1 messages the caller knows an older page exists; with fewer,
+            // only a buffer holding the whole conversation knows there is none
+            if (count <= limit && !complete) {
+                return null;
+            }
+            List<CachedMessage> all = new ArrayList<>(count);
+            for (CachedMessage slot : slots) {
+                if (slot != null) {
+                    all.add(slot);
+                }
+            }
+            // Writer batches can interleave slightly out of timestamp order
+            all.sort(OLDEST_FIRST.reversed());
+
+            List<Message> page = new ArrayList<>(Math.min(all.size(), limit + 1));
+            for (CachedMessage cached : all.subList(0, Math.min(all.size(), limit + 1))) {
+                page.add(toMessage(cached));
+            }
+            return page;
+        }
+
+        synchronized boolean isExpired() {
+            return System.nanoTime() - loadedAtNanos > TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        }
+
+        synchronized boolean isLoading() {
+            return loading;
+        }
+
+        synchronized long bytes() {
+            return bytes;
+        }
+
+        synchronized void release() {
+            if (!released) {
+                released = true;
+                usedBytes.addAndGet(-bytes);
+            }
+        }
+
+        private void add(CachedMessage cached) {
+            long delta = estimateBytes(cached);
+            CachedMessage replaced = slots[next];
+            if (replaced != null) {
+                // The oldest message leaves the buffer, so it no longer holds the whole conversation
+                delta -= estimateBytes(replaced);
+                complete = false;
+            } else {
+                count++;
+            }
+            slots[next] = cached;
+            next = (next + 1) % slots.length;
+            bytes += delta;
+            usedBytes.addAndGet(delta);
+        }
+
+        private Message toMessage(CachedMessage cached) {
+            Message message = new Message();
+            message.setId(cached.id());
+            message.setTimestamp(cached.timestamp());
+            message.setContent(cached.content());
+            message.setClientMessageId(cached.clientMessageId());
+            message.setSenderEmail(cached.sentByFirst() ? firstEmail : secondEmail);
+            message.setRecipientEmail(cached.sentByFirst() ? secondEmail : firstEmail);
+            return message;
+        }
+    }
+}
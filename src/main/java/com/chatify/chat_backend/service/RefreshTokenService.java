@@ -0,0 +1,284 @@
+package com.chatify.chat_backend.service;
+
+import com.chatify.chat_backend.entity.User;
+import com.chatify.chat_backend.util.Databases;
+import com.chatify.chat_backend.util.ExpiringCache;
+import com.chatify.chat_backend.util.SequenceIdAllocator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.SqlParameterValue;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refresh tokens: one per user, stored only as a SHA-256 hash.
+ *
+ * Issuing upserts the user's row (UPDATE, INSERT if there was none) instead of
+ * delete + insert. Rotation is a compare-and-set on the old hash, so a refresh
+ * token works exactly once even with concurrent requests. Recently issued tokens
+ * are kept in an optional in-memory index, which saves the lookup query on
+ * refresh; the conditional UPDATE still decides, so a stale entry is harmless.
+ * Expired rows are deleted in batches by a background sweeper.
+ */
+@Service
+public class RefreshTokenService {
+
+    private static final Logger log = LoggerFactory.getLogger(RefreshTokenService.class);
+
+    private static final String UPDATE_SQL =
+            "UPDATE refresh_tokens SET token = ?, expiry_date = ? WHERE user_id = ?";
+
+    // The id comes from the allocator; nextval() only when it has none (not PostgreSQL, or failed)
+    private static final String INSERT_SQL =
+            "INSERT INTO refresh_tokens (id, token, expiry_date, user_id) VALUES (COALESCE(?, nextval('refresh_tokens_seq')), ?, ?, ?)";
+
+    // Only succeeds while the presented token is still the current one
+    private static final String ROTATE_SQL =
+            "UPDATE refresh_tokens SET token = ?, expiry_date = ? WHERE user_id = ? AND token = ?";
+
+    private static final String FIND_SQL = """
+            SELECT rt.user_id, rt.expiry_date, u.email, u.username
+            FROM refresh_tokens rt
+            JOIN users u ON u.id = rt.user_id
+            WHERE rt.token = ?
+            """;
+
+    private static final String DELETE_FOR_USER_SQL =
+            "DELETE FROM refresh_tokens WHERE user_id = (SELECT id FROM users WHERE email = ?)";
+
+    private static final String SWEEP_SQL = """
+            DELETE FROM refresh_tokens
+            WHERE id IN (SELECT id FROM refresh_tokens WHERE expiry_date < ? LIMIT ?)
+            """;
+
+    private static final int TOKEN_BYTES = 32;
+
+    @Value("${app.jwt.refresh-token.expiration-ms}")
+    private long refreshTokenExpirationMs;
+
+    @Value("${app.jwt.refresh-token.hot-index.enabled:true}")
+    private boolean hotIndexEnabled;
+
+    @Value("${app.jwt.refresh-token.hot-index.max-size:50000}")
+    private int hotIndexMaxSize;
+
+    @Value("${app.jwt.refresh-token.sweep-interval-ms:600000}")
+    private long sweepIntervalMs;
+
+    /** Rows deleted per statement, keeps each sweep transaction and its locks short. */
+    @Value("${app.jwt.refresh-token.sweep-batch-size:1000}")
+    private int sweepBatchSize;
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    });
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MeterRegistry meterRegistry;
+    private final SecureRandom random = new SecureRandom();
+    private final SequenceIdAllocator idAllocator;
+
+    // Ids are taken from refresh_tokens_seq in blocks on PostgreSQL only (pg_sequences)
+    private boolean allocateIds;
+
+    // token hash -> owner, for tokens issued by this node
+    private ExpiringCache<String, ActiveToken> hotIndex;
+    private ScheduledExecutorService sweeper;
+    private Counter indexHits;
+    private Counter indexMisses;
+    private Counter sweptCounter;
+
+    public RefreshTokenService(JdbcTemplate jdbcTemplate, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.meterRegistry = meterRegistry;
+        this.idAllocator = new SequenceIdAllocator(jdbcTemplate, "refresh_tokens_seq");
+    }
+
+    @PostConstruct
+    public void start() {
+        allocateIds = Databases.isPostgres(jdbcTemplate);
+        hotIndex = new ExpiringCache<>(hotIndexMaxSize);
+        indexHits = meterRegistry.counter("auth.refresh-token.index.requests", "result", "hit");
+        indexMisses = meterRegistry.counter("auth.refresh-token.index.requests", "result", "miss");
+        sweptCounter = meterRegistry.counter("auth.refresh-token.swept");
+
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "refresh-token-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweepExpired, sweepIntervalMs, sweepIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * Create a new refresh token for the user, replacing the previous one.
+     * @return the plaintext token, only ever handed to the client
+     */
+    public String issue(User user) {
+        String token = newToken();
+        String hash = hash(token);
+        Timestamp expiry = Timestamp.from(Instant.now().plusMillis(refreshTokenExpirationMs));
+
+        if (jdbcTemplate.update(UPDATE_SQL, hash, expiry, user.getId()) == 0) {
+            try {
+                jdbcTemplate.update(INSERT_SQL, new SqlParameterValue(Types.BIGINT, allocateId()), hash, expiry, user.getId());
+            } catch (DuplicateKeyException e) {
+                // Concurrent first login of the same user, the row exists now
+                jdbcTemplate.update(UPDATE_SQL, hash, expiry, user.getId());
+            }
+        }
+        remember(hash, new ActiveToken(user.getId(), user.getEmail(), user.getUsername(), expiry.toInstant()));
+        return token;
+    }
+
+    /**
+     * @return a new id from refresh_tokens_seq, or null if no block could be fetched or
+     *         the database is not PostgreSQL; the insert then calls nextval() itself
+     */
+    private Long allocateId() {
+        if (!allocateIds) {
+            return null;
+        }
+        try {
+            return idAllocator.next();
+        } catch (DataAccessException | IllegalStateException e) {
+            log.warn("Could not allocate a refresh token id, the database assigns it on insert", e);
+            return null;
+        }
+    }
+
+    /**
+     * Exchange a refresh token for a new one. The presented token stops working.
+     * @throws RuntimeException if the token is unknown, expired or was already used
+     */
+    public Rotation rotate(String token) {
+        if (token == null || token.isBlank()) {
+            throw new RuntimeException("Refresh token not found");
+        }
+        String hash = hash(token);
+        ActiveToken current = find(hash);
+        if (current == null) {
+            throw new RuntimeException("Refresh token not found");
+        }
+        if (current.expiresAt().isBefore(Instant.now())) {
+            hotIndex.invalidate(hash);
+            throw new RuntimeException("Refresh token expired");
+        }
+
+        String newToken = newToken();
+        String newHash = hash(newToken);
+        Timestamp expiry = Timestamp.from(Instant.now().plusMillis(refreshTokenExpirationMs));
+        hotIndex.invalidate(hash);
+        if (jdbcTemplate.update(ROTATE_SQL, newHash, expiry, current.userId(), hash) == 0) {
+            // Rotated by a concurrent request, or revoked by logout
+            throw new RuntimeException("Refresh token not found");
+        }
+
+        ActiveToken rotated = new ActiveToken(current.userId(), current.email(), current.username(), expiry.toInstant());
+        remember(newHash, rotated);
+        return new Rotation(rotated.toUser(), newToken);
+    }
+
+    /**
+     * Delete the user's refresh token. Index entries of it fail on their next use.
+     */
+    public void revokeAll(String email) {
+        int deleted = jdbcTemplate.update(DELETE_FOR_USER_SQL, email);
+        log.debug("Deleted {} refresh tokens for user: {}", deleted, email);
+    }
+
+    /**
+     * Delete expired rows in batches of sweep-batch-size until none are left.
+     */
+    void sweepExpired() {
+        Timestamp now = Timestamp.from(Instant.now());
+        try {
+            int deleted;
+            do {
+                deleted = jdbcTemplate.update(SWEEP_SQL, now, sweepBatchSize);
+                sweptCounter.increment(deleted);
+            } while (deleted >= sweepBatchSize && !Thread.currentThread().isInterrupted());
+        } catch (DataAccessException e) {
+            log.warn("Refresh token sweep failed, retrying in {} ms", sweepIntervalMs, e);
+        }
+    }
+
+    private ActiveToken find(String hash) {
+        ActiveToken indexed = hotIndexEnabled ? hotIndex.get(hash) : null;
+        if (indexed != null) {
+            indexHits.increment();
+            return indexed;
+        }
+        indexMisses.increment();
+
+        List<ActiveToken> rows = jdbcTemplate.query(FIND_SQL, (rs, rowNum) -> new ActiveToken(
+                rs.getLong("user_id"),
+                rs.getString("email"),
+                rs.getString("username"),
+                rs.getTimestamp("expiry_date").toInstant()), hash);
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    private void remember(String hash, ActiveToken token) {
+        if (hotIndexEnabled) {
+            hotIndex.put(hash, token, token.expiresAt().toEpochMilli() - System.currentTimeMillis());
+        }
+    }
+
+    private String newToken() {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    private static String hash(String token) {
+        MessageDigest sha256 = SHA_256.get();
+        sha256.reset();
+        return Base64.getEncoder().encodeToString(sha256.digest(token.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Result of a refresh: the token owner and the refresh token that replaces the presented one.
+     */
+    public record Rotation(User user, String refreshToken) {
+    }
+
+    private record ActiveToken(Long userId, String email, String username, Instant expiresAt) {
+        User toUser() {
+            User user = new User();
+            user.setId(userId);
+            user.setEmail(email);
+            user.setUsername(username);
+            return user;
+        }
+    }
+}
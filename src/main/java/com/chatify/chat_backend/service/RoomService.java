@@ -0,0 +1,254 @@
+package com.chatify.chat_backend.service;
+
+import com.chatify.chat_backend.cluster.RoomMembershipChange;
+import com.chatify.chat_backend.dto.RoomCreateDTO;
+import com.chatify.chat_backend.dto.RoomDTO;
+import com.chatify.chat_backend.entity.ChatRoom;
+import com.chatify.chat_backend.entity.ChatRoomMember;
+import com.chatify.chat_backend.entity.User;
+import com.chatify.chat_backend.repository.ChatRoomMemberRepository;
+import com.chatify.chat_backend.repository.ChatRoomRepository;
+import com.chatify.chat_backend.repository.UserRepository;
+import com.chatify.chat_backend.util.ExpiringCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Group rooms and their membership.
+ * Room messages are published once to /topic/rooms/{id}; the broker fans them out
+ * to the subscribed members, and isMember() guards both sending and subscribing.
+ */
+@Service
+public class RoomService {
+
+    public static final String ROOM_TOPIC_PREFIX = "/topic/rooms/";
+
+    @Value("${app.rooms.max-members:5000}")
+    private int maxMembers;
+
+    /**
+     * Membership checks run for every room message and subscription. Like the email
+     * cache in UserService, "not a member" is cached much shorter than "member".
+     * Every change invalidates the entry on this node, and through the membership
+     * listeners (RoomMembershipSync) on every other node, once it is committed.
+     */
+    @Value("${app.rooms.membership-cache.max-size:100000}")
+    private int membershipCacheMaxSize;
+
+    @Value("${app.rooms.membership-cache.positive-ttl-ms:600000}")
+    private long positiveTtlMs;
+
+    @Value("${app.rooms.membership-cache.negative-ttl-ms:30000}")
+    private long negativeTtlMs;
+
+    private final ChatRoomRepository chatRoomRepository;
+    private final ChatRoomMemberRepository chatRoomMemberRepository;
+    private final UserRepository userRepository;
+    private final MeterRegistry meterRegistry;
+
+    private ExpiringCache<String, Boolean> membershipCache;
+    private Counter cacheHits;
+    private Counter cacheMisses;
+
+    private final List<Consumer<RoomMembershipChange>> membershipListeners = new CopyOnWriteArrayList<>();
+
+    public RoomService(
+            ChatRoomRepository chatRoomRepository,
+            ChatRoomMemberRepository chatRoomMemberRepository,
+            UserRepository userRepository,
+            MeterRegistry meterRegistry) {
+        this.chatRoomRepository = chatRoomRepository;
+        this.chatRoomMemberRepository = chatRoomMemberRepository;
+        this.userRepository = userRepository;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void initializeMembershipCache() {
+        membershipCache = new ExpiringCache<>(membershipCacheMaxSize);
+        cacheHits = meterRegistry.counter("rooms.membership-cache.requests", "result", "hit");
+        cacheMisses = meterRegistry.counter("rooms.membership-cache.requests", "result", "miss");
+    }
+
+    /**
+     * @return the room id if destination is a room topic, otherwise null
+     */
+    public static Long roomIdOf(String destination) {
+        if (destination == null || !destination.startsWith(ROOM_TOPIC_PREFIX)) {
+            return null;
+        }
+        try {
+            return Long.parseLong(destination.substring(ROOM_TOPIC_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid room destination: " + destination);
+        }
+    }
+
+    /**
+     * Run the listener after each committed membership change made on this node.
+     */
+    public void addMembershipListener(Consumer<RoomMembershipChange> listener) {
+        membershipListeners.add(listener);
+    }
+
+    /**
+     * Forget the cached membership, e.g. after another node changed it.
+     */
+    public void invalidateMembership(Long roomId, String email) {
+        membershipCache.invalidate(cacheKey(roomId, email));
+    }
+
+    public boolean isMember(Long roomId, String email) {
+        if (roomId == null || email == null) {
+            return false;
+        }
+        String key = cacheKey(roomId, email);
+        Boolean cached = membershipCache.get(key);
+        if (cached != null) {
+            cacheHits.increment();
+            return cached;
+        }
+        cacheMisses.increment();
+
+        boolean member = chatRoomMemberRepository.existsByRoomIdAndUserEmail(roomId, email);
+        membershipCache.put(key, member, member ? positiveTtlMs : negativeTtlMs);
+        return member;
+    }
+
+    @Transactional
+    public RoomDTO createRoom(String ownerEmail, RoomCreateDTO request) {
+        if (request.getName() == null || request.getName().isBlank()) {
+            throw new IllegalArgumentException("Room name is required");
+        }
+        Set<String> memberEmails = new LinkedHashSet<>();
+        memberEmails.add(ownerEmail);
+        if (request.getMemberEmails() != null) {
+            memberEmails.addAll(request.getMemberEmails());
+        }
+        if (memberEmails.size() > maxMembers) {
+            throw new IllegalArgumentException("A room can have at most " + maxMembers + " members");
+        }
+
+        // One query for all members instead of one per email
+        Map<String, User> users = new HashMap<>();
+        for (User user : userRepository.findAllByEmailIn(memberEmails)) {
+            users.put(user.getEmail(), user);
+        }
+        for (String email : memberEmails) {
+            if (!users.containsKey(email)) {
+                throw new IllegalArgumentException("User not found: " + email);
+            }
+        }
+        User owner = users.get(ownerEmail);
+
+        ChatRoom room = new ChatRoom();
+        room.setName(request.getName().trim());
+        room.setOwner(owner);
+        chatRoomRepository.save(room);
+
+        List<ChatRoomMember> members = new ArrayList<>(memberEmails.size());
+        for (String email : memberEmails) {
+            ChatRoomMember member = new ChatRoomMember();
+            member.setRoom(room);
+            member.setUser(users.get(email));
+            members.add(member);
+        }
+        chatRoomMemberRepository.saveAll(members);
+        membershipChanged(room.getId(), memberEmails, false);
+
+        return toDto(room, ownerEmail);
+    }
+
+    @Transactional(readOnly = true)
+    public List<RoomDTO> getRooms(String email) {
+        return chatRoomRepository.findByMemberEmail(email).stream()
+                .map(room -> toDto(room, room.getOwner().getEmail()))
+                .toList();
+    }
+
+    /**
+     * Any member may add users to a room.
+     */
+    @Transactional
+    public void addMember(String actorEmail, Long roomId, String email) {
+        if (!isMember(roomId, actorEmail)) {
+            throw new SecurityException("Not a member of room " + roomId);
+        }
+        if (chatRoomMemberRepository.existsByRoomIdAndUserEmail(roomId, email)) {
+            return;
+        }
+        if (chatRoomMemberRepository.countByRoomId(roomId) >= maxMembers) {
+            throw new IllegalArgumentException("Room " + roomId + " is full");
+        }
+
+        ChatRoomMember member = new ChatRoomMember();
+        member.setRoom(chatRoomRepository.getReferenceById(roomId));
+        member.setUser(findUser(email));
+        chatRoomMemberRepository.save(member);
+        membershipChanged(roomId, List.of(email), false);
+    }
+
+    /**
+     * Members may leave; only the owner may remove someone else.
+     * Once committed, the member's subscriptions to the room topic end on every node.
+     */
+    @Transactional
+    public void removeMember(String actorEmail, Long roomId, String email) {
+        if (!actorEmail.equals(email)) {
+            ChatRoom room = chatRoomRepository.findById(roomId)
+                    .orElseThrow(() -> new IllegalArgumentException("Room not found: " + roomId));
+            if (!room.getOwner().getEmail().equals(actorEmail)) {
+                throw new SecurityException("Only the owner can remove members");
+            }
+        }
+        chatRoomMemberRepository.deleteByRoomIdAndUserEmail(roomId, email);
+        membershipChanged(roomId, List.of(email), true);
+    }
+
+    /**
+     * Invalidate right away, and again after commit: a lookup in between still reads
+     * the old membership and may cache it.
+     */
+    private void membershipChanged(Long roomId, Collection<String> emails, boolean removed) {
+        emails.forEach(email -> invalidateMembership(roomId, email));
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                for (String email : emails) {
+                    invalidateMembership(roomId, email);
+                    RoomMembershipChange change = new RoomMembershipChange(roomId, email, removed);
+                    membershipListeners.forEach(listener -> listener.accept(change));
+                }
+            }
+        });
+    }
+
+    private User findUser(String email) {
+        return userRepository.findByEmail(email)
+                .orElseThrow(() -> new IllegalArgumentException("User not found: " + email));
+    }
+
+    private static RoomDTO toDto(ChatRoom room, String ownerEmail) {
+        return new RoomDTO(room.getId(), room.getName(), ownerEmail, ROOM_TOPIC_PREFIX + room.getId());
+    }
+
+    private static String cacheKey(Long roomId, String email) {
+        return roomId + ":" + email;
+    }
+}
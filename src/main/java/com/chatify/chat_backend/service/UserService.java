@@ -1,20 +1,76 @@
 package com.chatify.chat_backend.service;
 
 import com.chatify.chat_backend.repository.UserRepository;
+import com.chatify.chat_backend.util.ExpiringCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 @Service
 public class UserService {
 
     private final UserRepository userRepository;
+    private final MeterRegistry meterRegistry;
 
-    public UserService(UserRepository userRepository){
+    /**
+     * Known emails (true) are cached much longer than unknown ones (false),
+     * since an unknown email can start existing at any moment through registration.
+     */
+    @Value("${app.users.email-cache.max-size:100000}")
+    private int emailCacheMaxSize;
+
+    @Value("${app.users.email-cache.positive-ttl-ms:600000}")
+    private long positiveTtlMs;
+
+    @Value("${app.users.email-cache.negative-ttl-ms:30000}")
+    private long negativeTtlMs;
+
+    private ExpiringCache<String, Boolean> emailCache;
+    private Counter cacheHits;
+    private Counter cacheMisses;
+
+    public UserService(UserRepository userRepository, MeterRegistry meterRegistry){
         this.userRepository = userRepository;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void initializeEmailCache() {
+        emailCache = new ExpiringCache<>(emailCacheMaxSize);
+        cacheHits = meterRegistry.counter("users.email-cache.requests", "result", "hit");
+        cacheMisses = meterRegistry.counter("users.email-cache.requests", "result", "miss");
     }
 
-    @Transactional(readOnly = true)
+    /**
+     * Check whether a user with this email exists.
+     * Called for every chat message, so answers are cached and misses use an
+     * exists query instead of loading the whole User row.
+     */
     public Boolean existsByEmail(String email){
-        return userRepository.findByEmail(email).isPresent();
+        if (email == null) {
+            return false;
+        }
+
+        Boolean cached = emailCache.get(email);
+        if (cached != null) {
+            cacheHits.increment();
+            return cached;
+        }
+
+        cacheMisses.increment();
+        boolean exists = Boolean.TRUE.equals(userRepository.existsByEmail(email));
+        emailCache.put(email, exists, exists ? positiveTtlMs : negativeTtlMs);
+        return exists;
+    }
+
+    /**
+     * Drop any cached answer for this email, e.g. a negative entry after registration.
+     */
+    public void invalidateEmail(String email) {
+        if (email != null) {
+            emailCache.invalidate(email);
+        }
     }
 }
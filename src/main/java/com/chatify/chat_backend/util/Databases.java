@@ -0,0 +1,23 @@
+package com.chatify.chat_backend.util;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Database checks for the schema code that relies on PostgreSQL catalogs and syntax.
+ * Other databases (the embedded H2 of the load test) keep the schema Hibernate creates.
+ */
+public final class Databases {
+
+    private Databases() {
+    }
+
+    /**
+     * @return true if the JdbcTemplate talks to PostgreSQL, false for anything else,
+     *         including H2 in PostgreSQL compatibility mode
+     */
+    public static boolean isPostgres(JdbcTemplate jdbcTemplate) {
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) con -> con.getMetaData().getDatabaseProductName());
+        return "PostgreSQL".equalsIgnoreCase(product);
+    }
+}
@@ -0,0 +1,115 @@
+package com.chatify.chat_backend.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Small bounded in-process cache where every entry carries its own time to live.
+ * Reads are lock-free. When the cache is full, expired entries are swept first and
+ * then the oldest entries are dropped until it is back under 90% of maxSize (at least
+ * one entry below it). Concurrent puts can overshoot maxSize by the number of threads.
+ */
+public class ExpiringCache<K, V> {
+
+    // sequence = order of insertion, eviction drops the smallest first
+    private record Entry<V>(V value, long expiresAtNanos, long sequence) {
+        boolean isExpired(long now) {
+            return now - expiresAtNanos >= 0;
+        }
+    }
+
+    private final ConcurrentHashMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private final AtomicLong sequence = new AtomicLong();
+
+    public ExpiringCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the cached value, or null if absent or expired
+     */
+    public V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(System.nanoTime())) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.value();
+    }
+
+    /**
+     * Cache a value for ttlMillis. Non-positive TTLs are ignored.
+     */
+    public void put(K key, V value, long ttlMillis) {
+        if (ttlMillis <= 0) {
+            return;
+        }
+        if (entries.size() >= maxSize && !entries.containsKey(key)) {
+            evict();
+        }
+        entries.put(key, new Entry<>(value, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttlMillis),
+                sequence.incrementAndGet()));
+    }
+
+    /**
+     * Atomically cache a value unless a live entry already exists for the key.
+     * @return true if the value was stored, false if the key was already present
+     */
+    public boolean putIfAbsent(K key, V value, long ttlMillis) {
+        if (ttlMillis <= 0) {
+            return get(key) == null;
+        }
+        if (entries.size() >= maxSize && !entries.containsKey(key)) {
+            evict();
+        }
+        long now = System.nanoTime();
+        Entry<V> fresh = new Entry<>(value, now + TimeUnit.MILLISECONDS.toNanos(ttlMillis), sequence.incrementAndGet());
+        Entry<V> existing = entries.putIfAbsent(key, fresh);
+        if (existing == null) {
+            return true;
+        }
+        // An expired entry counts as absent, replace it unless another thread just did
+        return existing.isExpired(now) && entries.replace(key, existing, fresh);
+    }
+
+    public void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // Runs once per maxSize / 10 inserts, so the sort is cheap per insert
+    private synchronized void evict() {
+        long now = System.nanoTime();
+        entries.values().removeIf(entry -> entry.isExpired(now));
+
+        int target = maxSize - Math.max(1, maxSize / 10);
+        int excess = entries.size() - target;
+        if (excess <= 0) {
+            return;
+        }
+        List<Map.Entry<K, Entry<V>>> oldestFirst = new ArrayList<>(entries.entrySet());
+        oldestFirst.sort(Comparator.comparingLong(entry -> entry.getValue().sequence()));
+        for (Map.Entry<K, Entry<V>> entry : oldestFirst.subList(0, Math.min(excess, oldestFirst.size()))) {
+            entries.remove(entry.getKey(), entry.getValue());
+        }
+    }
+}
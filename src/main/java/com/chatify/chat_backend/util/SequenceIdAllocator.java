@@ -0,0 +1,56 @@
+package com.chatify.chat_backend.util;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Hands out ids from a Postgres sequence in blocks, for rows written with plain JDBC.
+ *
+ * Uses the same "pooled" scheme as Hibernate's sequence generator: a nextval() result
+ * v reserves the ids (v - increment, v]. JPA inserts, this allocator and the column
+ * default (which takes v itself) can therefore share one sequence without collisions.
+ * The increment is read together with every block, so it always matches the database.
+ * Ids are never below 1, even from the first block of a sequence that starts at 1.
+ */
+public class SequenceIdAllocator {
+
+    /**
+     * Default block size, the allocationSize of the entity sequences. The database
+     * increment (app.db.id-allocation-size, see IdSequenceService) is never below it.
+     */
+    public static final int ALLOCATION_SIZE = 50;
+
+    private static final String NEXT_BLOCK_SQL =
+            "SELECT nextval(CAST(? AS regclass)), (SELECT increment_by FROM pg_sequences WHERE sequencename = ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String sequenceName;
+
+    // Next id to hand out and the last id of the current block
+    private long next = 1;
+    private long last = 0;
+
+    public SequenceIdAllocator(JdbcTemplate jdbcTemplate, String sequenceName) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.sequenceName = sequenceName;
+    }
+
+    /**
+     * One database round trip per block, otherwise only a lock held for an increment.
+     * @throws org.springframework.dao.DataAccessException if a new block cannot be fetched
+     */
+    public synchronized long next() {
+        if (next > last) {
+            jdbcTemplate.query(NEXT_BLOCK_SQL, rs -> {
+                long value = rs.getLong(1);
+                long increment = rs.getLong(2);
+                if (increment < 1) {
+                    throw new IllegalStateException("Unknown increment for sequence " + sequenceName);
+                }
+                last = value;
+                // A fresh sequence starts at 1, its first block holds only that id
+                next = Math.max(1, value - increment + 1);
+            }, sequenceName, sequenceName);
+        }
+        return next++;
+    }
+}
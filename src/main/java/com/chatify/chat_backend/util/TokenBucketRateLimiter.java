@@ -0,0 +1,75 @@
+package com.chatify.chat_backend.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token buckets, one per key.
+ *
+ * Each bucket is a single AtomicLong holding the "theoretical arrival time" of the
+ * next request (GCRA): a request is allowed if, after adding one emission interval,
+ * that time is at most burst intervals ahead of now. This is equivalent to a bucket
+ * of burst tokens refilled at ratePerSecond, without a separate token count or lock.
+ *
+ * A bucket whose arrival time is in the past is full, i.e. identical to a new one,
+ * so sweep() can drop it without changing any decision.
+ */
+public class TokenBucketRateLimiter {
+
+    private final long emissionIntervalNanos;
+    private final long burstNanos;
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+    public TokenBucketRateLimiter(double ratePerSecond, int burst) {
+        if (ratePerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("ratePerSecond and burst must be positive");
+        }
+        this.emissionIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond);
+        this.burstNanos = emissionIntervalNanos * burst;
+    }
+
+    /**
+     * Take one token from the key's bucket.
+     * @return false if the bucket is empty; nothing is consumed then
+     */
+    public boolean tryAcquire(String key) {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            // Arrival time "now" = a full bucket
+            bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(System.nanoTime()));
+        }
+
+        long now = System.nanoTime();
+        while (true) {
+            long arrival = bucket.get();
+            // nanoTime values are only comparable by difference
+            long next = (arrival - now < 0 ? now : arrival) + emissionIntervalNanos;
+            if (next - now > burstNanos) {
+                return false;
+            }
+            if (bucket.compareAndSet(arrival, next)) {
+                return true;
+            }
+        }
+    }
+
+    public void remove(String key) {
+        buckets.remove(key);
+    }
+
+    /**
+     * Drop full buckets so keys that stopped sending do not accumulate.
+     */
+    public void sweep() {
+        long now = System.nanoTime();
+        buckets.entrySet().removeIf(entry -> {
+            long arrival = entry.getValue().get();
+            return arrival - now <= 0;
+        });
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+}
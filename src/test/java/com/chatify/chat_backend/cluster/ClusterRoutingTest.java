@@ -0,0 +1,148 @@
+package com.chatify.chat_backend.cluster;
+
+import com.chatify.chat_backend.dto.Message;
+import com.chatify.chat_backend.dto.ReceiptDTO;
+import com.chatify.chat_backend.support.TestNode;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.stomp.StompSession;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two nodes sharing a database through JdbcCluster, forwarding to each other over HTTP:
+ * a private message sent on one node must reach the recipient's session on the other,
+ * and the recipient's receipt must come back to the sender's node.
+ * A third node on its own database and in-process cluster must not see their users.
+ */
+class ClusterRoutingTest {
+
+    private static TestNode nodeA;
+    private static TestNode nodeB;
+    private static TestNode isolated;
+
+    @BeforeAll
+    static void start() {
+        nodeA = clusterNode("node-a", "create");
+        // Same database, the schema already exists
+        nodeB = clusterNode("node-b", "none");
+        isolated = TestNode.start("cluster-isolated", Map.of("app.cluster.node-id", "node-c"));
+    }
+
+    @AfterAll
+    static void stop() {
+        for (TestNode node : new TestNode[] {isolated, nodeB, nodeA}) {
+            if (node != null) {
+                node.close();
+            }
+        }
+    }
+
+    private static TestNode clusterNode(String nodeId, String ddlAuto) {
+        return TestNode.start("cluster-routing",
+                Map.of("app.cluster.node-id", nodeId,
+                        "app.cluster.transport", "jdbc",
+                        "app.cluster.secret", "cluster-routing-test",
+                        "app.cluster.advertised-host", "localhost",
+                        "spring.jpa.hibernate.ddl-auto", ddlAuto));
+    }
+
+    @Test
+    void privateMessageIsForwardedToTheRecipientsNode() throws Exception {
+        String alice = "alice-cluster@chatify.test";
+        String bob = "bob-cluster@chatify.test";
+        String aliceToken = nodeA.registerAndLogin(alice);
+        String bobToken = nodeA.registerAndLogin(bob);
+
+        StompSession bobSession = nodeB.connect(bobToken);
+        BlockingQueue<Message> inbox = TestNode.subscribe(bobSession, "/user/queue/messages");
+        awaitNodes(bob, Set.of("node-b"));
+
+        StompSession aliceSession = nodeA.connect(aliceToken);
+        awaitNodes(alice, Set.of("node-a"));
+        assertThat(router(nodeA).hasLocalSession(bob)).isFalse();
+        assertThat(router(nodeA).isOnline(bob)).isTrue();
+
+        // The subscription is processed asynchronously, resend until it is in place
+        Message delivered = null;
+        for (int attempt = 0; attempt < 20 && delivered == null; attempt++) {
+            aliceSession.send("/app/sendMessage", TestNode.message(alice, bob, "across nodes"));
+            delivered = inbox.poll(500, TimeUnit.MILLISECONDS);
+        }
+        assertThat(delivered).isNotNull();
+        assertThat(delivered.getSenderEmail()).isEqualTo(alice);
+        assertThat(delivered.getContent()).isEqualTo("across nodes");
+
+        aliceSession.disconnect();
+        bobSession.disconnect();
+        awaitNodes(bob, Set.of());
+    }
+
+    @Test
+    void receiptIsForwardedToTheSendersNode() throws Exception {
+        String dave = "dave-cluster@chatify.test";
+        String erin = "erin-cluster@chatify.test";
+        String daveToken = nodeA.registerAndLogin(dave);
+        String erinToken = nodeA.registerAndLogin(erin);
+
+        StompSession daveSession = nodeA.connect(daveToken);
+        BlockingQueue<ReceiptDTO> receipts = TestNode.subscribe(daveSession, "/user/queue/receipts", ReceiptDTO.class);
+        StompSession erinSession = nodeB.connect(erinToken);
+        BlockingQueue<Message> inbox = TestNode.subscribe(erinSession, "/user/queue/messages");
+        awaitNodes(dave, Set.of("node-a"));
+        awaitNodes(erin, Set.of("node-b"));
+
+        Message delivered = null;
+        for (int attempt = 0; attempt < 20 && delivered == null; attempt++) {
+            daveSession.send("/app/sendMessage", TestNode.message(dave, erin, "read me"));
+            delivered = inbox.poll(500, TimeUnit.MILLISECONDS);
+        }
+        assertThat(delivered).isNotNull();
+
+        // Each ack moves the mark to now, so a resend is a new receipt, not a duplicate
+        ReceiptDTO receipt = null;
+        for (int attempt = 0; attempt < 20 && receipt == null; attempt++) {
+            erinSession.send("/app/receipts", new ReceiptDTO(dave, ReceiptDTO.Type.READ, LocalDateTime.now()));
+            receipt = receipts.poll(500, TimeUnit.MILLISECONDS);
+        }
+        assertThat(receipt).isNotNull();
+        assertThat(receipt.getPeerEmail()).isEqualTo(erin);
+        assertThat(receipt.getType()).isEqualTo(ReceiptDTO.Type.READ);
+
+        daveSession.disconnect();
+        erinSession.disconnect();
+    }
+
+    @Test
+    void contextsWithoutTheSharedClusterDoNotSeeItsUsers() throws Exception {
+        String carol = "carol-cluster@chatify.test";
+        StompSession carolSession = nodeB.connect(nodeA.registerAndLogin(carol));
+        awaitNodes(carol, Set.of("node-b"));
+
+        assertThat(router(nodeA).isOnline(carol)).isTrue();
+        assertThat(router(isolated).isOnline(carol)).isFalse();
+        assertThat(isolated.context().getBean(ClusterSessionRegistry.class)).isInstanceOf(InProcessCluster.class);
+
+        carolSession.disconnect();
+    }
+
+    private static ClusterMessageRouter router(TestNode node) {
+        return node.context().getBean(ClusterMessageRouter.class);
+    }
+
+    private static void awaitNodes(String email, Set<String> expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        ClusterSessionRegistry registry = nodeA.context().getBean(ClusterSessionRegistry.class);
+        while (!registry.findNodes(email).equals(expected)) {
+            assertThat(System.nanoTime()).as("%s on %s within 10 s", email, expected).isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+}
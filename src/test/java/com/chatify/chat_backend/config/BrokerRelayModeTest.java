@@ -0,0 +1,88 @@
+package com.chatify.chat_backend.config;
+
+import com.chatify.chat_backend.dto.Message;
+import com.chatify.chat_backend.support.StandInStompBroker;
+import com.chatify.chat_backend.support.TestNode;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.stomp.StompSession;
+
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * app.websocket.broker.mode=relay against a stand-in STOMP broker on localhost:
+ * subscriptions and private messages must travel through the external broker.
+ */
+class BrokerRelayModeTest {
+
+    private static StandInStompBroker broker;
+    private static TestNode node;
+
+    @BeforeAll
+    static void start() throws Exception {
+        broker = StandInStompBroker.start();
+        node = TestNode.start("relay-mode", Map.of(
+                "app.websocket.broker.mode", "relay",
+                "app.websocket.broker.relay-host", "127.0.0.1",
+                "app.websocket.broker.relay-port", broker.port()));
+    }
+
+    @AfterAll
+    static void stop() throws Exception {
+        if (node != null) {
+            node.close();
+        }
+        if (broker != null) {
+            broker.close();
+        }
+    }
+
+    @Test
+    void systemSessionLogsInToTheBroker() throws Exception {
+        awaitFrame(frame -> frame.command().equals("CONNECT") && "guest".equals(frame.header("login")));
+    }
+
+    @Test
+    void privateMessageIsDeliveredThroughTheBroker() throws Exception {
+        String alice = "alice-relay@chatify.test";
+        String bob = "bob-relay@chatify.test";
+        String aliceToken = node.registerAndLogin(alice);
+        String bobToken = node.registerAndLogin(bob);
+
+        StompSession bobSession = node.connect(bobToken);
+        BlockingQueue<Message> inbox = TestNode.subscribe(bobSession, "/user/queue/messages");
+        // The relay turns the user destination into one broker queue per session
+        awaitFrame(frame -> frame.command().equals("SUBSCRIBE")
+                && frame.header("destination").startsWith("/queue/messages-user"));
+
+        StompSession aliceSession = node.connect(aliceToken);
+        aliceSession.send("/app/sendMessage", TestNode.message(alice, bob, "through the relay"));
+
+        Message delivered = inbox.poll(10, TimeUnit.SECONDS);
+        assertThat(delivered).isNotNull();
+        assertThat(delivered.getSenderEmail()).isEqualTo(alice);
+        assertThat(delivered.getContent()).isEqualTo("through the relay");
+        assertThat(broker.received()).anySatisfy(frame -> {
+            assertThat(frame.command()).isEqualTo("SEND");
+            assertThat(frame.header("destination")).startsWith("/queue/messages-user");
+            assertThat(frame.bodyAsString()).contains("through the relay");
+        });
+
+        aliceSession.disconnect();
+        bobSession.disconnect();
+    }
+
+    private static void awaitFrame(Predicate<StandInStompBroker.Frame> condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (broker.received().stream().noneMatch(condition)) {
+            assertThat(System.nanoTime()).as("frame not received within 10 s").isLessThan(deadline);
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.chatify.chat_backend.security;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenRevocationRegistryTest {
+
+    private static final String EMAIL = "alice@chatify.test";
+
+    private final JdbcTemplate jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+            "jdbc:h2:mem:token-revocations;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1", "sa", ""));
+
+    private TokenRevocationRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS token_revocations "
+                + "(email VARCHAR(255) PRIMARY KEY, revoked_before BIGINT NOT NULL)");
+        jdbcTemplate.update("DELETE FROM token_revocations");
+        registry = registry(3_600_000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.shutdown();
+    }
+
+    @Test
+    void tokensOfOtherUsersAreNotRevoked() {
+        registry.revokeAll(EMAIL);
+
+        assertThat(registry.isRevoked("bob@chatify.test", issuedAtMillis(System.currentTimeMillis() - 1000))).isFalse();
+    }
+
+    @Test
+    void revokesTokensIssuedUpToTheRevocation() {
+        long before = System.currentTimeMillis() - 1;
+        registry.revokeAll(EMAIL);
+
+        assertThat(registry.isRevoked(EMAIL, issuedAtMillis(before))).isTrue();
+        assertThat(registry.isRevoked(EMAIL, issuedAtMillis(System.currentTimeMillis() + 1000))).isFalse();
+    }
+
+    @Test
+    void secondPrecisionTokenFromTheRevocationSecondIsRevoked() {
+        registry.revokeAll(EMAIL);
+        long second = System.currentTimeMillis() / 1000 * 1000;
+
+        Claims claims = Jwts.claims().setSubject(EMAIL);
+        claims.setIssuedAt(new Date(second));
+
+        assertThat(registry.isRevoked(EMAIL, claims)).isTrue();
+    }
+
+    @Test
+    void tokenWithoutIssueTimeIsRevoked() {
+        registry.revokeAll(EMAIL);
+
+        assertThat(registry.isRevoked(EMAIL, Jwts.claims().setSubject(EMAIL))).isTrue();
+    }
+
+    @Test
+    void revocationsSurviveAnyNumberOfOtherRevocations() {
+        long before = System.currentTimeMillis() - 1;
+        registry.revokeAll(EMAIL);
+        for (int i = 0; i < 200_000; i++) {
+            registry.revokeAll("user-" + i + "@chatify.test");
+        }
+
+        assertThat(registry.isRevoked(EMAIL, issuedAtMillis(before))).isTrue();
+    }
+
+    @Test
+    void revocationEndsAfterOneTokenLifetime() {
+        ReflectionTestUtils.setField(registry, "tokenLifetimeMs", 1L);
+        long before = System.currentTimeMillis() - 1;
+        registry.revokeAll(EMAIL);
+
+        long deadline = System.currentTimeMillis() + 10;
+        while (System.currentTimeMillis() <= deadline) {
+            Thread.onSpinWait();
+        }
+
+        assertThat(registry.isRevoked(EMAIL, issuedAtMillis(before))).isFalse();
+    }
+
+    @Test
+    void revocationReachesAnotherNodeWithinOnePoll() throws InterruptedException {
+        TokenRevocationRegistry otherNode = registry(3_600_000L);
+        try {
+            long before = System.currentTimeMillis() - 1;
+            registry.revokeAll(EMAIL);
+
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (!otherNode.isRevoked(EMAIL, issuedAtMillis(before)) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertThat(otherNode.isRevoked(EMAIL, issuedAtMillis(before))).isTrue();
+        } finally {
+            otherNode.shutdown();
+        }
+    }
+
+    @Test
+    void startingNodeLoadsRevocationsStillInForce() {
+        long before = System.currentTimeMillis() - 1;
+        registry.revokeAll(EMAIL);
+
+        TokenRevocationRegistry startedLater = registry(3_600_000L);
+        try {
+            assertThat(startedLater.isRevoked(EMAIL, issuedAtMillis(before))).isTrue();
+        } finally {
+            startedLater.shutdown();
+        }
+    }
+
+    private TokenRevocationRegistry registry(long tokenLifetimeMs) {
+        TokenRevocationRegistry created = new TokenRevocationRegistry(jdbcTemplate);
+        ReflectionTestUtils.setField(created, "tokenLifetimeMs", tokenLifetimeMs);
+        ReflectionTestUtils.setField(created, "pollIntervalMs", 50L);
+        created.initialize();
+        return created;
+    }
+
+    private static Claims issuedAtMillis(long millis) {
+        Claims claims = Jwts.claims().setSubject(EMAIL);
+        claims.put(JwtUtil.CLAIM_ISSUED_AT_MS, millis);
+        claims.setIssuedAt(new Date(millis / 1000 * 1000));
+        return claims;
+    }
+}
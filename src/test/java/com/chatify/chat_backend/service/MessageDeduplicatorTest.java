@@ -0,0 +1,114 @@
+package com.chatify.chat_backend.service;
+
+import com.chatify.chat_backend.dto.Message;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageDeduplicatorTest {
+
+    private static final String ALICE = "alice@chatify.test";
+    private static final String BOB = "bob@chatify.test";
+
+    @Test
+    void resentClientIdIsRejected() {
+        MessageDeduplicator deduplicator = deduplicator(300_000);
+
+        assertThat(deduplicator.markFirstSeen(message(ALICE, "c-1"))).isTrue();
+        assertThat(deduplicator.markFirstSeen(message(ALICE, "c-1"))).isFalse();
+        assertThat(deduplicator.markFirstSeen(message(ALICE, "c-2"))).isTrue();
+    }
+
+    @Test
+    void clientIdsAreScopedBySender() {
+        MessageDeduplicator deduplicator = deduplicator(300_000);
+
+        assertThat(deduplicator.markFirstSeen(message(ALICE, "c-1"))).isTrue();
+        assertThat(deduplicator.markFirstSeen(message(BOB, "c-1"))).isTrue();
+    }
+
+    @Test
+    void messagesWithoutClientIdAreNeverDuplicates() {
+        MessageDeduplicator deduplicator = deduplicator(300_000);
+
+        assertThat(deduplicator.markFirstSeen(message(ALICE, null))).isTrue();
+        assertThat(deduplicator.markFirstSeen(message(ALICE, null))).isTrue();
+    }
+
+    @Test
+    void forgottenClientIdGoesThroughAgain() {
+        MessageDeduplicator deduplicator = deduplicator(300_000);
+        deduplicator.markFirstSeen(message(ALICE, "c-1"));
+
+        deduplicator.forget(message(ALICE, "c-1"));
+
+        assertThat(deduplicator.markFirstSeen(message(ALICE, "c-1"))).isTrue();
+    }
+
+    @Test
+    void clientIdIsForgottenAfterTheWindow() throws InterruptedException {
+        MessageDeduplicator deduplicator = deduplicator(1);
+        deduplicator.markFirstSeen(message(ALICE, "c-1"));
+
+        Thread.sleep(10);
+
+        assertThat(deduplicator.markFirstSeen(message(ALICE, "c-1"))).isTrue();
+    }
+
+    @Test
+    void concurrentResendsAreAcceptedExactlyOnce() throws Exception {
+        MessageDeduplicator deduplicator = deduplicator(300_000);
+        int threads = 8;
+        int clientIds = 2_000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch startLine = new CountDownLatch(1);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int thread = 0; thread < threads; thread++) {
+            futures.add(pool.submit(() -> {
+                startLine.await();
+                int accepted = 0;
+                for (int i = 0; i < clientIds; i++) {
+                    if (deduplicator.markFirstSeen(message(ALICE, "c-" + i))) {
+                        accepted++;
+                    }
+                }
+                return accepted;
+            }));
+        }
+        startLine.countDown();
+
+        int accepted = 0;
+        for (Future<Integer> future : futures) {
+            accepted += future.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertThat(accepted).isEqualTo(clientIds);
+    }
+
+    private static MessageDeduplicator deduplicator(long windowMs) {
+        MessageDeduplicator deduplicator = new MessageDeduplicator();
+        ReflectionTestUtils.setField(deduplicator, "maxSize", 100_000);
+        ReflectionTestUtils.setField(deduplicator, "windowMs", windowMs);
+        deduplicator.initialize();
+        return deduplicator;
+    }
+
+    private static Message message(String sender, String clientMessageId) {
+        Message message = new Message();
+        message.setSenderEmail(sender);
+        message.setRecipientEmail(BOB);
+        message.setClientMessageId(clientMessageId);
+        message.setContent("hello");
+        return message;
+    }
+}
@@ -0,0 +1,126 @@
+package com.chatify.chat_backend.service;
+
+import com.chatify.chat_backend.dto.Message;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class OutboundMessageCoalescerTest {
+
+    private static final String RECIPIENT = "bob@chatify.test";
+
+    private final Collection<Message> delivered = new ConcurrentLinkedQueue<>();
+    private OutboundMessageCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        SimpMessageSendingOperations messagingTemplate = mock(SimpMessageSendingOperations.class);
+        doAnswer(invocation -> {
+            Object payload = invocation.getArgument(2);
+            if (payload instanceof List<?> batch) {
+                batch.forEach(message -> delivered.add((Message) message));
+            } else {
+                delivered.add((Message) payload);
+            }
+            return null;
+        }).when(messagingTemplate).convertAndSendToUser(anyString(), anyString(), any(Object.class));
+
+        coalescer = new OutboundMessageCoalescer(messagingTemplate, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(coalescer, "enabled", true);
+        // Flushes run as soon as possible, racing the senders as often as they can
+        ReflectionTestUtils.setField(coalescer, "windowMs", 0L);
+        ReflectionTestUtils.setField(coalescer, "maxBatch", 50);
+        coalescer.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        coalescer.stop();
+    }
+
+    @Test
+    void lateMessageIsSentAfterTheWindow() throws Exception {
+        coalescer.send(message(0, 1));
+
+        awaitDelivered(1);
+    }
+
+    @Test
+    void concurrentSendersAndFlushesLoseNothingAndKeepEachSendersOrder() throws Exception {
+        int senders = 8;
+        int perSender = 20_000;
+        ExecutorService pool = Executors.newFixedThreadPool(senders);
+        CountDownLatch startLine = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int sender = 0; sender < senders; sender++) {
+            int senderIndex = sender;
+            futures.add(pool.submit(() -> {
+                startLine.await();
+                for (int i = 1; i <= perSender; i++) {
+                    coalescer.send(message(senderIndex, i));
+                    if (i % 100 == 0) {
+                        // Let the buffer drain so flushes retire it while others still send
+                        Thread.sleep(0, 50_000);
+                    }
+                }
+                return null;
+            }));
+        }
+        startLine.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        awaitDelivered(senders * perSender);
+
+        long[] lastSeen = new long[senders];
+        for (Message message : delivered) {
+            int sender = senderOf(message);
+            assertThat(message.getId()).as("order of sender %d", sender).isGreaterThan(lastSeen[sender]);
+            lastSeen[sender] = message.getId();
+        }
+        assertThat(lastSeen).containsOnly(perSender);
+    }
+
+    private void awaitDelivered(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (delivered.size() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(delivered).hasSize(expected);
+    }
+
+    private static Message message(int sender, long sequence) {
+        Message message = new Message();
+        message.setId(sequence);
+        message.setSenderEmail("sender-" + sender + "@chatify.test");
+        message.setRecipientEmail(RECIPIENT);
+        message.setContent("message " + sequence);
+        return message;
+    }
+
+    private static int senderOf(Message message) {
+        String email = message.getSenderEmail();
+        return Integer.parseInt(email.substring("sender-".length(), email.indexOf('@')));
+    }
+}
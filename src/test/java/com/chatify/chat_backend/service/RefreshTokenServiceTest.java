@@ -0,0 +1,118 @@
+package com.chatify.chat_backend.service;
+
+import com.chatify.chat_backend.entity.User;
+import com.chatify.chat_backend.repository.UserRepository;
+import com.chatify.chat_backend.support.TestNode;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Rotation against a real database: the conditional UPDATE must let a refresh token
+ * through exactly once, whether it is found in the in-memory index or not.
+ */
+class RefreshTokenServiceTest {
+
+    private static TestNode node;
+    private static RefreshTokenService refreshTokens;
+    private static UserRepository users;
+
+    @BeforeAll
+    static void start() {
+        node = TestNode.start("refresh-tokens", Map.of());
+        refreshTokens = node.context().getBean(RefreshTokenService.class);
+        users = node.context().getBean(UserRepository.class);
+    }
+
+    @AfterAll
+    static void stop() {
+        node.close();
+    }
+
+    @Test
+    void rotatedTokenIsReplaced() {
+        User user = user("rotate@chatify.test");
+        String token = refreshTokens.issue(user);
+
+        RefreshTokenService.Rotation rotation = refreshTokens.rotate(token);
+
+        assertThat(rotation.user().getEmail()).isEqualTo(user.getEmail());
+        assertThat(rotation.refreshToken()).isNotEqualTo(token);
+        assertThatThrownBy(() -> refreshTokens.rotate(token)).hasMessage("Refresh token not found");
+        assertThat(refreshTokens.rotate(rotation.refreshToken()).user().getId()).isEqualTo(user.getId());
+    }
+
+    @Test
+    void issuingReplacesTheUsersPreviousToken() {
+        User user = user("reissue@chatify.test");
+        String first = refreshTokens.issue(user);
+        String second = refreshTokens.issue(user);
+
+        assertThatThrownBy(() -> refreshTokens.rotate(first)).hasMessage("Refresh token not found");
+        assertThat(refreshTokens.rotate(second).user().getId()).isEqualTo(user.getId());
+    }
+
+    @Test
+    void revokedTokenFailsEvenWhileStillIndexed() {
+        User user = user("revoke@chatify.test");
+        String token = refreshTokens.issue(user);
+
+        refreshTokens.revokeAll(user.getEmail());
+
+        assertThatThrownBy(() -> refreshTokens.rotate(token)).hasMessage("Refresh token not found");
+    }
+
+    @Test
+    void concurrentRotationsOfOneTokenSucceedExactlyOnce() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            User user = user("concurrent-" + round + "@chatify.test");
+            String token = refreshTokens.issue(user);
+
+            assertThat(concurrentRotations(token, 8)).as("round %d", round).isEqualTo(1);
+        }
+    }
+
+    private static int concurrentRotations(String token, int threads) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch startLine = new CountDownLatch(1);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int thread = 0; thread < threads; thread++) {
+            futures.add(pool.submit(() -> {
+                startLine.await();
+                try {
+                    refreshTokens.rotate(token);
+                    return true;
+                } catch (RuntimeException e) {
+                    return false;
+                }
+            }));
+        }
+        startLine.countDown();
+
+        int succeeded = 0;
+        for (Future<Boolean> future : futures) {
+            if (future.get(30, TimeUnit.SECONDS)) {
+                succeeded++;
+            }
+        }
+        pool.shutdown();
+        return succeeded;
+    }
+
+    private static User user(String email) {
+        node.registerAndLogin(email);
+        return users.findByEmail(email).orElseThrow();
+    }
+}
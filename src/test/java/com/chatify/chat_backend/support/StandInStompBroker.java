@@ -0,0 +1,247 @@
+package com.chatify.chat_backend.support;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal STOMP 1.2 broker over TCP, standing in for RabbitMQ or ActiveMQ in tests of
+ * the broker relay mode. Supports CONNECT/STOMP, SUBSCRIBE, UNSUBSCRIBE, SEND and
+ * DISCONNECT with exact destination matching; no acknowledgements, transactions or
+ * heart-beats. Every frame received from a client is recorded for assertions.
+ */
+public final class StandInStompBroker implements AutoCloseable {
+
+    private final ServerSocket server;
+    private final ExecutorService connections = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "stand-in-stomp-broker");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final List<Frame> received = new CopyOnWriteArrayList<>();
+    private final AtomicLong messageIds = new AtomicLong();
+    private volatile boolean closed;
+
+    private StandInStompBroker() throws IOException {
+        this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    }
+
+    public static StandInStompBroker start() throws IOException {
+        StandInStompBroker broker = new StandInStompBroker();
+        broker.connections.submit(broker::acceptLoop);
+        return broker;
+    }
+
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * @return every frame received so far, in arrival order
+     */
+    public List<Frame> received() {
+        return List.copyOf(received);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        server.close();
+        connections.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Connection connection = new Connection(server.accept());
+                connections.submit(() -> serve(connection));
+            } catch (IOException e) {
+                if (!closed) {
+                    throw new IllegalStateException("Stand-in broker stopped accepting", e);
+                }
+            }
+        }
+    }
+
+    private void serve(Connection connection) {
+        try (connection) {
+            Frame frame;
+            while ((frame = connection.read()) != null) {
+                received.add(frame);
+                if (!handle(connection, frame)) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // Client went away
+        } finally {
+            subscriptions.removeIf(subscription -> subscription.connection() == connection);
+        }
+    }
+
+    /**
+     * @return false once the connection should be closed
+     */
+    private boolean handle(Connection connection, Frame frame) throws IOException {
+        switch (frame.command()) {
+            case "CONNECT", "STOMP" -> {
+                connection.write("CONNECTED", Map.of("version", "1.2", "heart-beat", "0,0", "server", "stand-in"), new byte[0]);
+                return true;
+            }
+            case "SUBSCRIBE" -> subscriptions.add(
+                    new Subscription(connection, frame.header("id"), frame.header("destination")));
+            case "UNSUBSCRIBE" -> subscriptions.removeIf(subscription ->
+                    subscription.connection() == connection && subscription.id().equals(frame.header("id")));
+            case "SEND" -> deliver(frame);
+            case "DISCONNECT" -> {
+                sendReceipt(connection, frame);
+                return false;
+            }
+            default -> {
+                connection.write("ERROR", Map.of("message", "Unsupported command " + frame.command()), new byte[0]);
+                return false;
+            }
+        }
+        sendReceipt(connection, frame);
+        return true;
+    }
+
+    private void deliver(Frame send) {
+        for (Subscription subscription : subscriptions) {
+            if (!subscription.destination().equals(send.header("destination"))) {
+                continue;
+            }
+            Map<String, String> headers = new LinkedHashMap<>(send.headers());
+            headers.remove("receipt");
+            headers.remove("content-length");
+            headers.put("subscription", subscription.id());
+            headers.put("message-id", Long.toString(messageIds.incrementAndGet()));
+            try {
+                subscription.connection().write("MESSAGE", headers, send.body());
+            } catch (IOException e) {
+                // Subscriber went away, removed when its read loop ends
+            }
+        }
+    }
+
+    private static void sendReceipt(Connection connection, Frame frame) throws IOException {
+        String receipt = frame.header("receipt");
+        if (receipt != null) {
+            connection.write("RECEIPT", Map.of("receipt-id", receipt), new byte[0]);
+        }
+    }
+
+    public record Frame(String command, Map<String, String> headers, byte[] body) {
+
+        public String header(String name) {
+            return headers.get(name);
+        }
+
+        public String bodyAsString() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    private record Subscription(Connection connection, String id, String destination) {
+    }
+
+    private static final class Connection implements AutoCloseable {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+
+        private Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream());
+            this.out = socket.getOutputStream();
+        }
+
+        /**
+         * @return the next frame, or null at the end of the stream
+         */
+        Frame read() throws IOException {
+            int first;
+            // End-of-line bytes between frames are heart-beats
+            do {
+                first = in.read();
+            } while (first == '\n' || first == '\r');
+            if (first == -1) {
+                return null;
+            }
+            String command = (char) first + readLine();
+
+            Map<String, String> headers = new LinkedHashMap<>();
+            String line;
+            while (!(line = readLine()).isEmpty()) {
+                int colon = line.indexOf(':');
+                // Repeated headers: the first one wins
+                headers.putIfAbsent(unescape(line.substring(0, colon)), unescape(line.substring(colon + 1)));
+            }
+
+            byte[] body;
+            String contentLength = headers.get("content-length");
+            if (contentLength != null) {
+                body = in.readNBytes(Integer.parseInt(contentLength));
+                in.read(); // Terminating NUL
+            } else {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                int next;
+                while ((next = in.read()) > 0) {
+                    buffer.write(next);
+                }
+                body = buffer.toByteArray();
+            }
+            return new Frame(command, headers, body);
+        }
+
+        synchronized void write(String command, Map<String, String> headers, byte[] body) throws IOException {
+            StringBuilder frame = new StringBuilder(command).append('\n');
+            headers.forEach((name, value) -> frame.append(escape(name)).append(':').append(escape(value)).append('\n'));
+            frame.append("content-length:").append(body.length).append("\n\n");
+            out.write(frame.toString().getBytes(StandardCharsets.UTF_8));
+            out.write(body);
+            out.write(0);
+            out.flush();
+        }
+
+        private String readLine() throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int next;
+            while ((next = in.read()) != '\n') {
+                if (next == -1) {
+                    throw new IOException("Connection closed inside a frame");
+                }
+                line.write(next);
+            }
+            String text = line.toString(StandardCharsets.UTF_8);
+            return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+        }
+
+        private static String unescape(String value) {
+            return value.replace("\\c", ":").replace("\\n", "\n").replace("\\r", "\r").replace("\\\\", "\\");
+        }
+
+        private static String escape(String value) {
+            return value.replace("\\", "\\\\").replace(":", "\\c").replace("\n", "\\n").replace("\r", "\\r");
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
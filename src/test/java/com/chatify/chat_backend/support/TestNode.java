@@ -0,0 +1,166 @@
+package com.chatify.chat_backend.support;
+
+import com.chatify.chat_backend.ChatBackendApplication;
+import com.chatify.chat_backend.dto.AuthResponseDTO;
+import com.chatify.chat_backend.dto.Message;
+import com.chatify.chat_backend.dto.UserLoginDTO;
+import com.chatify.chat_backend.dto.UserRegistrationDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.reflect.Type;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A chat node started in-process on a random port and an in-memory H2 database,
+ * like the embedded node of ChatLoadTest, with REST and STOMP client helpers.
+ * Nodes started with the same database name share their tables, like a cluster
+ * sharing one PostgreSQL; only the first of them should create the schema.
+ */
+public final class TestNode implements AutoCloseable {
+
+    private static final String SECRET = Base64.getEncoder()
+            .encodeToString("integration-test-secret-integration-test-0123456789".getBytes());
+
+    private static final String PASSWORD = "integration-test-password";
+
+    private final ConfigurableApplicationContext context;
+    private final String baseUrl;
+    private final RestTemplate rest = new RestTemplate();
+    private final WebSocketStompClient stompClient;
+
+    private TestNode(ConfigurableApplicationContext context) {
+        this.context = context;
+        this.baseUrl = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+
+        ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+        converter.setObjectMapper(objectMapper);
+        this.stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+        this.stompClient.setMessageConverter(converter);
+    }
+
+    /**
+     * @param database   H2 database name, shared by nodes started with the same one
+     * @param properties extra or overriding application properties
+     */
+    public static TestNode start(String database, Map<String, Object> properties) {
+        return start(database, properties, context -> {
+        });
+    }
+
+    /**
+     * @param initializer runs before the context refreshes, e.g. to register shared beans
+     */
+    public static TestNode start(String database, Map<String, Object> properties,
+                                 ApplicationContextInitializer<ConfigurableApplicationContext> initializer) {
+        Map<String, Object> all = new HashMap<>();
+        all.put("server.port", 0);
+        all.put("spring.datasource.url", "jdbc:h2:mem:" + database + ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        all.put("spring.datasource.username", "sa");
+        all.put("spring.datasource.password", "");
+        all.put("spring.jpa.hibernate.ddl-auto", "create");
+        all.put("jwt.secret", SECRET);
+        all.put("app.jwt.refresh-token.expiration-ms", 86_400_000L);
+        all.putAll(properties);
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(ChatBackendApplication.class)
+                .properties(all)
+                .initializers(initializer)
+                .run();
+        return new TestNode(context);
+    }
+
+    public ConfigurableApplicationContext context() {
+        return context;
+    }
+
+    /**
+     * Register a user through the REST API and log in.
+     * @return the access token
+     */
+    public String registerAndLogin(String email) {
+        String username = email.substring(0, email.indexOf('@'));
+        rest.postForObject(baseUrl + "/api/auth/register", new UserRegistrationDTO(username, email, PASSWORD), String.class);
+        return login(email);
+    }
+
+    /**
+     * @return the access token of an already registered user
+     */
+    public String login(String email) {
+        AuthResponseDTO response = rest.postForObject(baseUrl + "/api/auth/login",
+                new UserLoginDTO(email, PASSWORD), AuthResponseDTO.class);
+        return response.getAccessToken();
+    }
+
+    /**
+     * Open a STOMP session on /ws-native, authenticated with the token.
+     */
+    public StompSession connect(String accessToken) throws Exception {
+        StompHeaders connectHeaders = new StompHeaders();
+        connectHeaders.add("Authorization", "Bearer " + accessToken);
+        String url = baseUrl.replaceFirst("^http", "ws") + "/ws-native";
+        return stompClient.connectAsync(url, new WebSocketHttpHeaders(), connectHeaders, new StompSessionHandlerAdapter() {
+        }).get(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Subscribe and collect every received Message.
+     */
+    public static BlockingQueue<Message> subscribe(StompSession session, String destination) {
+        return subscribe(session, destination, Message.class);
+    }
+
+    /**
+     * Subscribe and collect every received payload, converted to type.
+     */
+    public static <T> BlockingQueue<T> subscribe(StompSession session, String destination, Class<T> type) {
+        BlockingQueue<T> received = new LinkedBlockingQueue<>();
+        session.subscribe(destination, new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return type;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                received.add(type.cast(payload));
+            }
+        });
+        return received;
+    }
+
+    public static Message message(String sender, String recipient, String content) {
+        Message message = new Message();
+        message.setSenderEmail(sender);
+        message.setRecipientEmail(recipient);
+        message.setContent(content);
+        return message;
+    }
+
+    @Override
+    public void close() {
+        stompClient.stop();
+        context.close();
+    }
+}
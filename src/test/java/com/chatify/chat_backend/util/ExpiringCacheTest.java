@@ -0,0 +1,165 @@
+package com.chatify.chat_backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ExpiringCacheTest {
+
+    private static final long TTL = 60_000;
+
+    @Test
+    void rejectsNonPositiveMaxSize() {
+        assertThatThrownBy(() -> new ExpiringCache<String, String>(0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void neverGrowsPastMaxSize() {
+        for (int maxSize : new int[] {1, 2, 5, 9, 10, 11, 100}) {
+            ExpiringCache<Integer, Integer> cache = new ExpiringCache<>(maxSize);
+            for (int i = 0; i < maxSize * 5; i++) {
+                cache.put(i, i, TTL);
+                assertThat(cache.size()).as("maxSize %d after %d puts", maxSize, i + 1).isLessThanOrEqualTo(maxSize);
+            }
+        }
+    }
+
+    @Test
+    void evictsOldestEntriesFirst() {
+        ExpiringCache<Integer, Integer> cache = new ExpiringCache<>(10);
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, i, TTL);
+        }
+
+        cache.put(10, 10, TTL);
+
+        // Back to 9 entries plus the new one: only key 0 (and nothing newer) is gone
+        assertThat(cache.get(0)).isNull();
+        for (int i = 1; i <= 10; i++) {
+            assertThat(cache.get(i)).isEqualTo(i);
+        }
+    }
+
+    @Test
+    void singleEntryCacheKeepsTheLatestValue() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(1);
+        cache.put("a", "1", TTL);
+        cache.put("b", "2", TTL);
+
+        assertThat(cache.get("a")).isNull();
+        assertThat(cache.get("b")).isEqualTo("2");
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    void sweepsExpiredEntriesBeforeLiveOnes() throws InterruptedException {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(3);
+        cache.put("live-1", "x", TTL);
+        cache.put("short", "x", 1);
+        cache.put("live-2", "x", TTL);
+        Thread.sleep(20);
+
+        cache.put("new", "x", TTL);
+
+        assertThat(cache.get("live-1")).isEqualTo("x");
+        assertThat(cache.get("live-2")).isEqualTo("x");
+        assertThat(cache.get("new")).isEqualTo("x");
+        assertThat(cache.get("short")).isNull();
+    }
+
+    @Test
+    void replacingAKeyDoesNotEvict() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(2);
+        cache.put("a", "1", TTL);
+        cache.put("b", "1", TTL);
+
+        cache.put("a", "2", TTL);
+
+        assertThat(cache.get("a")).isEqualTo("2");
+        assertThat(cache.get("b")).isEqualTo("1");
+    }
+
+    @Test
+    void expiredEntriesAreNotReturned() throws InterruptedException {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(10);
+        cache.put("a", "1", 1);
+        Thread.sleep(20);
+
+        assertThat(cache.get("a")).isNull();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void nonPositiveTtlIsIgnored() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(10);
+        cache.put("a", "1", 0);
+
+        assertThat(cache.get("a")).isNull();
+    }
+
+    @Test
+    void putIfAbsentKeepsLiveEntriesAndReplacesExpiredOnes() throws InterruptedException {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(10);
+
+        assertThat(cache.putIfAbsent("a", "1", 1)).isTrue();
+        Thread.sleep(20);
+        assertThat(cache.putIfAbsent("a", "2", TTL)).isTrue();
+        assertThat(cache.putIfAbsent("a", "3", TTL)).isFalse();
+        assertThat(cache.get("a")).isEqualTo("2");
+    }
+
+    @Test
+    void putIfAbsentSucceedsForExactlyOneConcurrentCaller() throws Exception {
+        ExpiringCache<String, Integer> cache = new ExpiringCache<>(1000);
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (int round = 0; round < 200; round++) {
+                String key = "key-" + round;
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<Boolean>> results = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    int value = t;
+                    Callable<Boolean> put = () -> {
+                        start.await();
+                        return cache.putIfAbsent(key, value, TTL);
+                    };
+                    results.add(pool.submit(put));
+                }
+                start.countDown();
+
+                int stored = 0;
+                for (Future<Boolean> result : results) {
+                    stored += result.get() ? 1 : 0;
+                }
+                assertThat(stored).as("round %d", round).isEqualTo(1);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void invalidateAndClearRemoveEntries() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(10);
+        cache.put("a", "1", TTL);
+        cache.put("b", "1", TTL);
+
+        cache.invalidate("a");
+        assertThat(cache.get("a")).isNull();
+        assertThat(cache.get("b")).isEqualTo("1");
+
+        cache.clear();
+        assertThat(cache.size()).isZero();
+    }
+}
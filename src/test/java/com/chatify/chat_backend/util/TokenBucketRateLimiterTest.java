@@ -0,0 +1,115 @@
+package com.chatify.chat_backend.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TokenBucketRateLimiterTest {
+
+    @Test
+    void rejectsNonPositiveSettings() {
+        assertThatThrownBy(() -> new TokenBucketRateLimiter(0, 1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new TokenBucketRateLimiter(1, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void allowsOneBurstThenRejects() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(0.01, 5);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(limiter.tryAcquire("alice")).as("request %d", i + 1).isTrue();
+        }
+        assertThat(limiter.tryAcquire("alice")).isFalse();
+    }
+
+    @Test
+    void keysHaveTheirOwnBuckets() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(0.01, 1);
+
+        assertThat(limiter.tryAcquire("alice")).isTrue();
+        assertThat(limiter.tryAcquire("alice")).isFalse();
+        assertThat(limiter.tryAcquire("bob")).isTrue();
+    }
+
+    @Test
+    void rejectedRequestsDoNotDelayTheRefill() throws InterruptedException {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(100, 1);
+        assertThat(limiter.tryAcquire("alice")).isTrue();
+        for (int i = 0; i < 1_000; i++) {
+            assertThat(limiter.tryAcquire("alice")).isFalse();
+        }
+
+        // One emission interval is 10 ms
+        Thread.sleep(30);
+
+        assertThat(limiter.tryAcquire("alice")).isTrue();
+    }
+
+    @Test
+    void sweepDropsOnlyFullBuckets() throws InterruptedException {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(10, 10);
+        limiter.tryAcquire("idle");
+        // One emission interval is 100 ms, so the bucket is full again
+        Thread.sleep(300);
+
+        limiter.sweep();
+
+        assertThat(limiter.size()).isZero();
+        assertThat(limiter.tryAcquire("idle")).isTrue();
+    }
+
+    @Test
+    void sweepKeepsBucketsThatAreNotFull() {
+        // One token every 10 s: neither bucket refills while the test runs
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(0.1, 10);
+        limiter.tryAcquire("idle");
+        for (int i = 0; i < 10; i++) {
+            limiter.tryAcquire("busy");
+        }
+
+        limiter.sweep();
+
+        assertThat(limiter.size()).isEqualTo(2);
+        // The busy bucket kept its state: still empty
+        assertThat(limiter.tryAcquire("busy")).isFalse();
+    }
+
+    @Test
+    void concurrentRequestsNeverExceedTheBurst() throws Exception {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(0.01, 100);
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch startLine = new CountDownLatch(1);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int thread = 0; thread < threads; thread++) {
+            futures.add(pool.submit(() -> {
+                startLine.await();
+                int acquired = 0;
+                for (int i = 0; i < 10_000; i++) {
+                    if (limiter.tryAcquire("alice")) {
+                        acquired++;
+                    }
+                }
+                return acquired;
+            }));
+        }
+        startLine.countDown();
+
+        int acquired = 0;
+        for (Future<Integer> future : futures) {
+            acquired += future.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        assertThat(acquired).isEqualTo(100);
+    }
+}